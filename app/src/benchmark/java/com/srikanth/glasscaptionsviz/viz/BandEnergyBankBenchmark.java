@@ -0,0 +1,48 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The engine's band meters for one hop of input: twelve bands, 125 Hz to 6 kHz at
+ * Q 4, fed a 128-sample block at a time as the DSP thread does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BandEnergyBankBenchmark {
+    private static final int RATE = 16000;
+    private static final int HOP = 512;
+    private static final int BLOCK = 128;
+
+    private short[] signal;
+    private int pos;
+    private BandEnergyBank bank;
+
+    @Setup
+    public void setup() {
+        signal = Signals.voiced(RATE * 4, RATE, 0.3);
+        bank = new BandEnergyBank(BandEnergyBank.logBands(12, 125f, 6000f), 4f, RATE, 2048);
+    }
+
+    @Benchmark
+    public float hop() {
+        if (pos + HOP > signal.length) pos = 0;
+        for (int off = 0; off < HOP; off += BLOCK) bank.process(signal, pos + off, BLOCK);
+        pos += HOP;
+        return bank.getLevels()[0];
+    }
+}
@@ -0,0 +1,72 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One spectrogram column's magnitudes, float path (window, FFT, magnitude stages)
+ * against the Q15 FixedFFT stage, at the engine's hop on 16 kHz voiced input. HotSpot
+ * on a desktop favours the double path; the ratio that matters is the one on Glass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FftBenchmark {
+    private static final int RATE = 16000;
+    private static final int HOP = 512;
+
+    @Param({"1024"})
+    public int size;
+
+    private short[] signal;
+    private int pos;
+    private final ProcessingGraph.Frame frame = new ProcessingGraph.Frame();
+    private DspStages.Magnitudes single;
+    private DspStages.FixedMagnitudes fixed;
+
+    @Setup
+    public void setup() {
+        signal = Signals.voiced(RATE * 4, RATE, 0.3);
+        DspStages.Analysis analysis = new DspStages.Analysis(size);
+        single = new DspStages.Magnitudes(new DspStages.Spectrum(new DspStages.Windowed(analysis), new FFT(size)));
+        fixed = new DspStages.FixedMagnitudes(analysis, new FixedFFT(size));
+        frame.pcm = new short[HOP];
+        frame.length = HOP;
+        frame.sampleRate = RATE;
+    }
+
+    private void nextFrame() {
+        if (pos + HOP > signal.length) pos = 0;
+        System.arraycopy(signal, pos, frame.pcm, 0, HOP);
+        pos += HOP;
+        frame.index++;
+    }
+
+    @Benchmark
+    public float[] floatFft() {
+        nextFrame();
+        single.pull(frame);
+        return single.mags;
+    }
+
+    @Benchmark
+    public float[] fixedFft() {
+        nextFrame();
+        fixed.pull(frame);
+        return fixed.mags;
+    }
+}
@@ -0,0 +1,90 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One spectrogram column on the multi-resolution path (2048-pt long frame plus 1 or 2
+ * 256-pt short frames per 512-sample hop, i.e. what the budget sheds between) against
+ * the single 1024-pt FFT path it replaces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiResolutionBenchmark {
+    private static final int RATE = 16000;
+    private static final int HOP = 512;
+
+    @State(Scope.Thread)
+    public static class Input {
+        short[] signal;
+        int pos;
+        final ProcessingGraph.Frame frame = new ProcessingGraph.Frame();
+
+        @Setup
+        public void setup() {
+            signal = Signals.voiced(RATE * 4, RATE, 0.3);
+            frame.pcm = new short[HOP];
+            frame.length = HOP;
+            frame.sampleRate = RATE;
+        }
+
+        void next() {
+            if (pos + HOP > signal.length) pos = 0;
+            System.arraycopy(signal, pos, frame.pcm, 0, HOP);
+            pos += HOP;
+            frame.index++;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Single {
+        DspStages.Magnitudes magnitudes;
+
+        @Setup
+        public void setup() {
+            magnitudes = new DspStages.Magnitudes(new DspStages.Spectrum(
+                    new DspStages.Windowed(new DspStages.Analysis(1024)), new FFT(1024)));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Multi {
+        @Param({"1", "2"})
+        public int shortFrames;
+        MultiResolutionSpectrum spectrum;
+
+        @Setup
+        public void setup() {
+            spectrum = new MultiResolutionSpectrum(256, 2048, 1024);
+            spectrum.configure(RATE, 1500f, 500f);
+            spectrum.setMaxShortFrames(shortFrames);
+        }
+    }
+
+    @Benchmark
+    public float[] singleFft(Input in, Single s) {
+        in.next();
+        s.magnitudes.pull(in.frame);
+        return s.magnitudes.mags;
+    }
+
+    @Benchmark
+    public float[] multiResolution(Input in, Multi m) {
+        in.next();
+        return m.spectrum.process(in.frame.pcm, in.frame.length);
+    }
+}
@@ -0,0 +1,53 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One PitchTracker estimate per hop at the engine's 1024-sample frame, on voiced
+ * input and on silence (which returns before the two FFTs).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PitchTrackerBenchmark {
+    private static final int RATE = 16000;
+    private static final int HOP = 512;
+
+    @Param({"voiced", "silence"})
+    public String input;
+
+    private short[] signal;
+    private int pos;
+    private final short[] frame = new short[1024];
+    private PitchTracker tracker;
+
+    @Setup
+    public void setup() {
+        signal = "silence".equals(input) ? new short[RATE * 4] : Signals.voiced(RATE * 4, RATE, 0.3);
+        tracker = new PitchTracker(frame.length);
+    }
+
+    @Benchmark
+    public float estimate() {
+        if (pos + frame.length > signal.length) pos = 0;
+        System.arraycopy(signal, pos, frame, 0, frame.length);
+        pos += HOP;
+        tracker.process(frame, frame.length, RATE);
+        return tracker.getF0();
+    }
+}
@@ -0,0 +1,57 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resampling one second of capture to the 16 kHz DSP rate, fed in the DSP thread's
+ * 256-sample chunks, from each capture rate a device may negotiate. The score is ns
+ * per second of input, the same figure getResamplerNanosPerSecond() reports live.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResamplerBenchmark {
+    private static final int OUT = 16000;
+    private static final int CHUNK = 256;
+
+    @Param({"44100", "48000", "22050", "8000"})
+    public int inRate;
+
+    private short[] second;
+    private final short[] in = new short[CHUNK];
+    private short[] out;
+    private Resampler resampler;
+
+    @Setup
+    public void setup() {
+        second = Signals.voiced(inRate, inRate, 0.3);
+        resampler = new Resampler(inRate, OUT);
+        out = new short[resampler.maxOutput(CHUNK)];
+    }
+
+    @Benchmark
+    public int oneSecond() {
+        int produced = 0;
+        for (int off = 0; off < second.length; off += CHUNK) {
+            int n = Math.min(CHUNK, second.length - off);
+            System.arraycopy(second, off, in, 0, n);
+            produced += resampler.process(in, n, out);
+        }
+        return produced;
+    }
+}
@@ -0,0 +1,27 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/** Deterministic test input for the benchmarks. */
+final class Signals {
+    private Signals() {}
+
+    /**
+     * Voiced speech-like PCM: ten harmonics of an F0 gliding around 150 Hz plus a
+     * little noise, peaking near amp of full scale.
+     */
+    static short[] voiced(int n, int rate, double amp) {
+        short[] pcm = new short[n];
+        long seed = 12345;
+        double phase = 0;
+        for (int i=0;i<n;i++) {
+            double f0 = 150 + 30 * Math.sin(2 * Math.PI * 0.7 * i / rate);
+            phase += 2 * Math.PI * f0 / rate;
+            double v = 0;
+            for (int h=1;h<=10;h++) v += Math.sin(h * phase) / h;
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            double noise = ((seed >>> 40) / (double) (1 << 24)) - 0.5;
+            v = v / 2.0 + 0.02 * noise;
+            pcm[i] = (short) Math.max(-32768, Math.min(32767, Math.round(v * amp * 32767)));
+        }
+        return pcm;
+    }
+}
@@ -20,11 +20,13 @@ import android.os.Looper;
 
 
 import com.srikanth.glasscaptionsviz.viz.AudioEngine;
+import com.srikanth.glasscaptionsviz.viz.EventTrace;
 import com.srikanth.glasscaptionsviz.viz.SpectrogramView;
 
+import java.io.File;
 import java.util.ArrayList;
 
-public class MainActivity extends Activity implements AudioEngine.WaveformListener {
+public class MainActivity extends Activity implements AudioEngine.WaveformListener, AudioEngine.StressListener {
 
     private static final String TAG = "GCViz";
 
@@ -39,11 +41,9 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
     private static final float BASE_SP = 24f;      // normal
     private static final float EMPHASIS_SP = 32f;  // larger for emphasized word
 
-    // Emphasis logic (in dB domain)
-    private static final float DB_SPIKE_RATIO = 1.15f; // 15% over rolling dB average triggers emphasis
-    private static final float EMA_ALPHA = 0.20f;      // dB rolling average smoothing
-    private static final float DB_MIN = -60f;          // floor for silence in dBFS - change this to chek the background
-    private static final float EPS = 1e-6f;
+    // Emphasis logic: stress events from the engine's spectral-flux onset detector
+    private static final float STRESS_RATIO = 1.25f;            // onset this much stronger than recent ones = stressed
+    private static final long STRESS_WINDOW_NS = 800_000_000L;  // how recent a stress must be to mark the last word
     // Silence → “Listening…” after 10s with no speech activity
     private static final long SILENCE_MS = 15_000L;
     private final Handler ui = new Handler(Looper.getMainLooper());
@@ -61,8 +61,17 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
     }
 
 
-    private volatile float emaDb = DB_MIN; // rolling dB average
-    private Thread dbEmaThread;
+    private volatile long lastStressNanos = Long.MIN_VALUE / 2;
+    private String lastCaption; // UI thread only
+    private final Runnable restyleCaption = new Runnable() {
+        @Override public void run() {
+            // Re-apply emphasis if the caption on screen is still the last recognizer text
+            if (captions != null && lastCaption != null
+                    && lastCaption.trim().equals(captions.getText().toString())) {
+                setCaptionWithEmphasis(lastCaption);
+            }
+        }
+    };
     private PowerManager.WakeLock wakeLock;
 
     @Override
@@ -93,6 +102,8 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
             audioEngine.addLoudnessListener(spectrogramView); // drives on-screen meter internally
             audioEngine.addWaveformListener(this);            // to overlay per-utterance waveform
         }
+        audioEngine.addStressListener(this);                  // caption emphasis
+        if (BuildConfig.DEBUG) audioEngine.probeAllocations(500, 2000, 0); // logs B/frame per stage
         try {
             audioEngine.start();
             Log.d(TAG, "AudioEngine started");
@@ -101,9 +112,6 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
             if (captions != null) captions.setText("Audio error: " + t.getMessage());
         }
 
-        // Start rolling dB tracker (reads spectrogram's current loudness and converts to dB)
-        startDbEmaLoop();
-
         // Stagger STT to avoid mic contention (AudioRecord grabs mic first)
         new Thread(() -> {
             try { Thread.sleep(900); } catch (InterruptedException ignored) {}
@@ -118,6 +126,7 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
             if (!SpeechRecognizer.isRecognitionAvailable(this)) {
                 if (captions != null) captions.setText("Speech service not available");
                 Log.w(TAG, "Speech service not available");
+                EventTrace.event(EventTrace.STT_UNAVAILABLE);
                 return;
             }
             speech = SpeechRecognizer.createSpeechRecognizer(this);
@@ -132,6 +141,7 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
 
             speech.startListening(sttIntent);
             Log.d(TAG, "SpeechRecognizer startListening");
+            EventTrace.event(EventTrace.STT_START);
         } catch (Throwable t) {
             Log.e(TAG, "SpeechRecognizer setup failed", t);
             if (captions != null) captions.setText("STT error: " + t.getMessage());
@@ -139,6 +149,7 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
     }
 
     private void restartSttQuick() {
+        EventTrace.event(EventTrace.STT_RESTART);
         try { if (speech != null) speech.cancel(); } catch (Exception ignore) {}
         try { if (speech != null) speech.startListening(sttIntent); } catch (Exception ignore) {}
     }
@@ -149,36 +160,14 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
         speech = null;
     }
 
-    // ---------- Loudness → dB EMA ----------
-
-    private void startDbEmaLoop() {
-        dbEmaThread = new Thread(() -> {
-            try {
-                while (!Thread.currentThread().isInterrupted()) {
-                    Thread.sleep(80);
-                    float curDb = currentDb();
-                    emaDb = (1f - EMA_ALPHA) * emaDb + EMA_ALPHA * curDb;
-                }
-            } catch (InterruptedException ignored) {}
-        }, "DbEmaLoop");
-        dbEmaThread.start();
-    }
-
-    private void stopDbEmaLoop() {
-        if (dbEmaThread != null) {
-            dbEmaThread.interrupt();
-            dbEmaThread = null;
-        }
-    }
+    // ---------- Stress events ----------
 
-    // Convert spectrogramView's current loudness (expected ~linear 0..1) to dBFS
-    private float currentDb() {
-        if (spectrogramView == null) return DB_MIN;
-        float lin = spectrogramView.getCurrentLoudness(); // your view exposes this; treat as linear
-        lin = Math.max(EPS, lin);                         // avoid -inf
-        float db = 20f * (float)Math.log10(lin);          // [-inf..0]
-        if (Float.isNaN(db) || Float.isInfinite(db)) db = DB_MIN;
-        return Math.max(DB_MIN, Math.min(0f, db));
+    // Audio thread: keep the time, let the UI thread restyle the caption
+    @Override
+    public void onStress(long timestampNanos, float strength) {
+        if (strength < STRESS_RATIO) return;
+        lastStressNanos = timestampNanos;
+        ui.post(restyleCaption);
     }
 
     // ---------- Caption rendering with last-word emphasis ----------
@@ -189,12 +178,12 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
         // Always show text at base size
         captions.setTextSize(TypedValue.COMPLEX_UNIT_SP, BASE_SP);
 
+        lastCaption = fullText;
         String trimmed = fullText.trim();
         if (trimmed.isEmpty()) { captions.setText(""); return; }
 
         int lastSpace = trimmed.lastIndexOf(' ');
-        float curDb = currentDb();
-        boolean emphasize = curDb > (emaDb * DB_SPIKE_RATIO);
+        boolean emphasize = System.nanoTime() - lastStressNanos < STRESS_WINDOW_NS;
 
         if (lastSpace < 0) {
             // single word
@@ -251,7 +240,7 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
     protected void onDestroy() {
         super.onDestroy();
         ui.removeCallbacks(silenceRunnable);
-        stopDbEmaLoop();
+        ui.removeCallbacks(restyleCaption);
         stopStt();
         if (audioEngine != null) {
             audioEngine.stop();
@@ -261,12 +250,30 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
     }
 
 
+    // ---------- Event trace ----------
+
+    // Writes the in-memory event trace next to the app's files; decode it with EventTrace's main()
+    private File dumpTrace() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) dir = getFilesDir();
+        File file = new File(dir, "trace-" + System.currentTimeMillis() + ".bin");
+        try {
+            int n = EventTrace.dump(file);
+            Log.i(TAG, "Dumped " + n + " trace events to " + file);
+            return file;
+        } catch (Exception e) {
+            Log.e(TAG, "Trace dump failed", e);
+            return null;
+        }
+    }
+
     // Swipe-down on Glass maps to BACK; do a full app exit so it doesn’t hang around
     private void shutdownAndExit() {
         Log.d(TAG, "shutdownAndExit");
-        stopDbEmaLoop();
         stopStt();
         if (audioEngine != null) audioEngine.stop();
+        EventTrace.event(EventTrace.APP_EXIT);
+        dumpTrace(); // keep the session's trace for post-mortems
         try { finishAffinity(); } catch (Exception ignore) {}
         try {
             android.os.Process.killProcess(android.os.Process.myPid());
@@ -285,22 +292,26 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
             shutdownAndExit();
             return true;
         }
+        if (keyCode == KeyEvent.KEYCODE_CAMERA) {
+            // Camera button: snapshot the trace without leaving the app
+            new Thread(this::dumpTrace).start();
+            return true;
+        }
         return super.onKeyDown(keyCode, event);
     }
 
     // ---------- Recognition Listener ----------
 
     class SimpleListener implements RecognitionListener {
-        private void log(String m){ Log.d(TAG, "STT:" + m); }
 
         @Override public void onReadyForSpeech(Bundle params) {
-            log("ready");
+            EventTrace.event(EventTrace.STT_READY);
             resetSilenceTimer();
             if (spectrogramView != null) spectrogramView.clearWaveform();
         }
 
         @Override public void onBeginningOfSpeech() {
-            log("begin");
+            EventTrace.event(EventTrace.STT_BEGIN);
             // Start recording waveform for this utterance
             if (audioEngine != null) audioEngine.startWaveformRecording();
             if (captions != null) captions.setText("…");
@@ -308,19 +319,20 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
         }
 
         @Override public void onRmsChanged(float rmsdB) {
-            // Not used; we compute emphasis from spectrogramView loudness -> dB EMA
+            // Not used; emphasis comes from AudioEngine stress events
         }
 
         @Override public void onBufferReceived(byte[] buffer) { }
 
         @Override public void onEndOfSpeech() {
-            log("end");
+            EventTrace.event(EventTrace.STT_END);
             if (audioEngine != null) audioEngine.stopWaveformRecording();
             resetSilenceTimer();
         }
 
         @Override public void onError(int error) {
-            log("error:" + error);
+            Log.w(TAG, "STT error " + error);
+            EventTrace.event(EventTrace.STT_ERROR, error);
             if (captions != null) {
                 captions.setTextSize(TypedValue.COMPLEX_UNIT_SP, BASE_SP);
                 captions.setText("Speech error: " + error);
@@ -332,8 +344,8 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
         }
 
         @Override public void onResults(Bundle results) {
-            log("final results");
             ArrayList<String> list = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+            EventTrace.event(EventTrace.STT_RESULTS, list != null ? list.size() : 0);
             if (list != null && !list.isEmpty() && captions != null) {
                 setCaptionWithEmphasis(list.get(0));
             }
@@ -347,8 +359,8 @@ public class MainActivity extends Activity implements AudioEngine.WaveformListen
         }
 
         @Override public void onPartialResults(Bundle partialResults) {
-            log("partial");
             ArrayList<String> list = partialResults.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+            EventTrace.event(EventTrace.STT_PARTIAL, list != null ? list.size() : 0);
             if (list != null && !list.isEmpty() && captions != null) {
                 setCaptionWithEmphasis(list.get(0));
             }
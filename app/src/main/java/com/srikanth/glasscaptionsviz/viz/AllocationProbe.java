@@ -0,0 +1,71 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * On-device allocation check for the DSP thread. The hot path only runs against a
+ * live AudioRecord, so this stands in for an allocation regression test: after
+ * warm-up it counts what the frame loop, each graph stage and each tap allocate over
+ * a fixed number of frames, logs bytes per frame, and flags anything over budget.
+ * Counting uses Debug's per-thread allocation counter (API 19 era; deprecated later).
+ */
+final class AllocationProbe implements ProcessingGraph.AllocationCounter {
+    private static final String TAG = "GCViz";
+
+    private final int warmupFrames;
+    private final int measureFrames;
+    private final long budgetPerFrame;
+    private int frames = 0;
+    private long startBytes;
+    private String report;
+
+    AllocationProbe(int warmupFrames, int measureFrames, long budgetPerFrame) {
+        this.warmupFrames = Math.max(1, warmupFrames);
+        this.measureFrames = Math.max(1, measureFrames);
+        this.budgetPerFrame = budgetPerFrame;
+    }
+
+    @Override
+    public long threadAllocatedBytes() {
+        return Debug.getThreadAllocSize();
+    }
+
+    /**
+     * Called on the DSP thread after each frame of the first graph; returns true once the
+     * report is ready. Stages and taps of every graph are reported per frame of the first.
+     */
+    boolean afterFrame(ProcessingGraph[] graphs) {
+        frames++;
+        if (frames == warmupFrames) {
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+            for (ProcessingGraph g : graphs) {
+                g.resetAllocationCounts();
+                g.setAllocationCounter(this);
+            }
+            startBytes = threadAllocatedBytes();
+            return false;
+        }
+        if (frames < warmupFrames + measureFrames) return false;
+
+        long total = threadAllocatedBytes() - startBytes;
+        String over = "";
+        for (ProcessingGraph g : graphs) {
+            g.setAllocationCounter(null);
+            over += g.allocationReport(measureFrames, budgetPerFrame);
+        }
+        Debug.stopAllocCounting();
+        long perFrame = total / measureFrames;
+        report = "DSP thread: " + perFrame + " B/frame over " + measureFrames + " frames (budget "
+                + budgetPerFrame + ")\n" + over;
+        if (perFrame > budgetPerFrame || !over.isEmpty()) {
+            Log.e(TAG, "Allocation budget exceeded\n" + report);
+        } else {
+            Log.i(TAG, report);
+        }
+        return true;
+    }
+
+    String getReport() { return report; }
+}
@@ -0,0 +1,216 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import android.util.Log;
+
+/**
+ * Bounded, preallocated hand-off between the audio thread and one slow subscriber.
+ * The audio thread only copies into a free slot under a short lock and never waits;
+ * when the queue is full the {@link Delivery.DropPolicy} decides what is lost. A
+ * dedicated thread drains the queue and invokes the wrapped listener.
+ *
+ * Slot payloads are sized at construction for the listener's payload length. A
+ * payload of another length (band meters after setBands() changes the band count)
+ * reallocates each slot once, on the audio thread, the first time it is used.
+ *
+ * Each subclass implements one listener interface, so the engine keeps iterating its
+ * ordinary listener lists and does not know which subscribers are asynchronous.
+ */
+public abstract class AsyncSubscriber {
+    private static final String TAG = "GCViz";
+
+    // One queued callback; data is copied in, never shared with the engine
+    static final class Event {
+        long enqueuedNanos;
+        long time;
+        float a, b;
+        float[] data;
+        int len;
+
+        Event(int payload) { data = new float[payload]; }
+
+        void copyFrom(Event e) {
+            enqueuedNanos = e.enqueuedNanos;
+            time = e.time; a = e.a; b = e.b;
+            ensure(e.len);
+            System.arraycopy(e.data, 0, data, 0, e.len);
+            len = e.len;
+        }
+
+        // Only allocates when the payload length changes; see the class doc
+        void ensure(int n) {
+            if (data.length != n) data = new float[n];
+        }
+    }
+
+    private final Delivery delivery;
+    private final Event[] slots;
+    private final Event current; // consumer-side copy, delivered outside the lock
+    private final Object lock = new Object();
+    private int head = 0;  // next slot to deliver
+    private int count = 0;
+    private boolean running = false;
+    private Thread thread;   // guarded by lock
+    private final String name;
+
+    private volatile long delivered = 0;
+    private volatile long dropped = 0;
+    private volatile long lastLagNanos = 0;
+    private volatile long maxLagNanos = 0;
+
+    /** payload is the float[] length the listener receives (0 for scalar callbacks). */
+    AsyncSubscriber(String name, Delivery delivery, int payload) {
+        this.name = name;
+        this.delivery = delivery;
+        slots = new Event[delivery.capacity];
+        for (int i=0;i<slots.length;i++) slots[i] = new Event(payload);
+        current = new Event(payload);
+    }
+
+    /** The listener this subscriber delivers to. */
+    public abstract Object target();
+
+    abstract void deliver(Event e);
+
+    void start() {
+        synchronized (lock) {
+            if (running) return;
+            running = true;
+            thread = new Thread(new Runnable() {
+                @Override public void run() { drain(); }
+            }, "AsyncSub-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    void stop() {
+        Thread t;
+        synchronized (lock) {
+            running = false;
+            dropped += count; // queued but never delivered
+            count = 0;
+            lock.notifyAll();
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            try { t.join(200); } catch (InterruptedException ignore) {}
+        }
+    }
+
+    // Producer side: claim a slot (or drop) and fill it; never blocks on the consumer
+    final void offer(long time, float a, float b, float[] data, int len) {
+        synchronized (lock) {
+            if (!running) return;
+            int idx;
+            if (count < slots.length) {
+                idx = (head + count) % slots.length;
+                count++;
+            } else if (delivery.policy == Delivery.DropPolicy.DROP_NEWEST) {
+                dropped++;
+                return;
+            } else {
+                // DROP_OLDEST and COALESCE_LATEST both give up the oldest undelivered item
+                idx = head;
+                head = (head + 1) % slots.length;
+                dropped++;
+            }
+            Event e = slots[idx];
+            e.enqueuedNanos = System.nanoTime();
+            e.time = time; e.a = a; e.b = b;
+            e.ensure(len);
+            if (len > 0) System.arraycopy(data, 0, e.data, 0, len);
+            e.len = len;
+            lock.notifyAll();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            synchronized (lock) {
+                while (running && count == 0) {
+                    try { lock.wait(); } catch (InterruptedException ex) { return; }
+                }
+                if (!running) return;
+                current.copyFrom(slots[head]);
+                head = (head + 1) % slots.length;
+                count--;
+            }
+            long lag = System.nanoTime() - current.enqueuedNanos;
+            lastLagNanos = lag;
+            if (lag > maxLagNanos) maxLagNanos = lag;
+            try {
+                deliver(current);
+            } catch (Throwable t) {
+                Log.e(TAG, "Async subscriber " + name + " failed", t);
+            }
+            delivered++;
+        }
+    }
+
+    public Delivery getDelivery() { return delivery; }
+
+    public long getDelivered() { return delivered; }
+
+    /** Items never delivered: dropped by the policy, or still queued when it was stopped. */
+    public long getDropped() { return dropped; }
+
+    /** Items waiting in the queue right now. */
+    public int getQueued() {
+        synchronized (lock) { return count; }
+    }
+
+    /** Queue latency of the most recently delivered item. */
+    public long getLagNanos() { return lastLagNanos; }
+
+    public long getMaxLagNanos() { return maxLagNanos; }
+
+    static final class Spectrogram extends AsyncSubscriber implements AudioEngine.SpectrogramSink {
+        final AudioEngine.SpectrogramSink sink;
+        Spectrogram(AudioEngine.SpectrogramSink sink, Delivery d, int payload) { super("spectrogram", d, payload); this.sink = sink; }
+        @Override public Object target() { return sink; }
+        @Override public void onSpectrogramColumn(float[] mags) { offer(0, 0, 0, mags, mags.length); }
+        @Override void deliver(Event e) { sink.onSpectrogramColumn(e.data); }
+    }
+
+    static final class Loudness extends AsyncSubscriber implements AudioEngine.LoudnessListener {
+        final AudioEngine.LoudnessListener listener;
+        Loudness(AudioEngine.LoudnessListener l, Delivery d) { super("loudness", d, 0); listener = l; }
+        @Override public Object target() { return listener; }
+        @Override public void onLoudnessUpdate(float loudness) { offer(0, loudness, 0, null, 0); }
+        @Override void deliver(Event e) { listener.onLoudnessUpdate(e.a); }
+    }
+
+    static final class Waveform extends AsyncSubscriber implements AudioEngine.WaveformListener {
+        final AudioEngine.WaveformListener listener;
+        Waveform(AudioEngine.WaveformListener l, Delivery d, int payload) { super("waveform", d, payload); listener = l; }
+        @Override public Object target() { return listener; }
+        @Override public void onWaveformComplete(float[] waveform) { offer(0, 0, 0, waveform, waveform.length); }
+        // Waveform listeners may keep the array, so each delivery gets its own copy
+        @Override void deliver(Event e) { listener.onWaveformComplete(e.data.clone()); }
+    }
+
+    static final class Pitch extends AsyncSubscriber implements AudioEngine.PitchListener {
+        final AudioEngine.PitchListener listener;
+        Pitch(AudioEngine.PitchListener l, Delivery d) { super("pitch", d, 0); listener = l; }
+        @Override public Object target() { return listener; }
+        @Override public void onPitch(long timestampNanos, float f0, float confidence) { offer(timestampNanos, f0, confidence, null, 0); }
+        @Override void deliver(Event e) { listener.onPitch(e.time, e.a, e.b); }
+    }
+
+    static final class BandLevels extends AsyncSubscriber implements AudioEngine.BandLevelListener {
+        final AudioEngine.BandLevelListener listener;
+        BandLevels(AudioEngine.BandLevelListener l, Delivery d, int payload) { super("bands", d, payload); listener = l; }
+        @Override public Object target() { return listener; }
+        @Override public void onBandLevels(long timestampNanos, float[] levels) { offer(timestampNanos, 0, 0, levels, levels.length); }
+        @Override void deliver(Event e) { listener.onBandLevels(e.time, e.data); }
+    }
+
+    static final class Stress extends AsyncSubscriber implements AudioEngine.StressListener {
+        final AudioEngine.StressListener listener;
+        Stress(AudioEngine.StressListener l, Delivery d) { super("stress", d, 0); listener = l; }
+        @Override public Object target() { return listener; }
+        @Override public void onStress(long timestampNanos, float strength) { offer(timestampNanos, strength, 0, null, 0); }
+        @Override void deliver(Event e) { listener.onStress(e.time, e.a); }
+    }
+}
@@ -7,32 +7,164 @@ import android.media.MediaRecorder;
 import android.os.Process;
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 public class AudioEngine implements Runnable {
     private static final String TAG = "GCViz";
     private final Context ctx;
     private volatile boolean running = false;
-    private Thread thread;
+    private Thread thread;       // capture: AudioRecord.read into the ring, nothing else
+    private Thread dspThread;    // drains the ring through the graph
+    private volatile boolean dspRunning = false;
     private AudioRecord recorder;
     private int sampleRate = 16000; // will be overridden if unsupported
     private int bufSize = 2048;
 
-    private final CopyOnWriteArrayList<SpectrogramSink> spectrogramSinks = new CopyOnWriteArrayList<SpectrogramSink>();
-    private final CopyOnWriteArrayList<LoudnessListener> loudnessListeners = new CopyOnWriteArrayList<LoudnessListener>();
-    private final CopyOnWriteArrayList<WaveformListener> waveformListeners = new CopyOnWriteArrayList<WaveformListener>();
+    private final ListenerList<SpectrogramSink> spectrogramSinks = new ListenerList<SpectrogramSink>(new SpectrogramSink[0]);
+    private final ListenerList<LoudnessListener> loudnessListeners = new ListenerList<LoudnessListener>(new LoudnessListener[0]);
+    private final ListenerList<WaveformListener> waveformListeners = new ListenerList<WaveformListener>(new WaveformListener[0]);
+    private final ListenerList<PitchListener> pitchListeners = new ListenerList<PitchListener>(new PitchListener[0]);
+    private final ListenerList<BandLevelListener> bandLevelListeners = new ListenerList<BandLevelListener>(new BandLevelListener[0]);
+    private final ListenerList<StressListener> stressListeners = new ListenerList<StressListener>(new StressListener[0]);
+    // Async wrappers sit in the lists above like any listener; this tracks them for lifecycle and stats.
+    // The lists above are walked every frame, so they are ListenerLists; this one is not
+    private final CopyOnWriteArrayList<AsyncSubscriber> asyncSubscribers = new CopyOnWriteArrayList<AsyncSubscriber>();
     private final FFT fft = new FFT(1024);
 
-    // Loudness and waveform tracking
-    private float[] loudnessBuffer = new float[50]; // Rolling buffer for smoothing
-    private int loudnessIndex = 0;
+    // Multi-resolution mode: 256-point frames for onsets, 2048-point for harmonics
+    private static final int MR_SHORT = 256;
+    private static final int MR_LONG = 2048;
+    private static final float MR_CROSSOVER_HZ = 1500f;
+    private static final float MR_BLEND_HZ = 500f;
+    private static final float MR_BUDGET = 0.25f; // max fraction of a hop spent on the spectrum
+
+    // Sliding-DFT band meters, run and published every BAND_BLOCK samples as they arrive
+    private static final int BAND_BLOCK = 128;
+    private static final int BAND_MAX_WINDOW = 2048;
+
+    // Per-frame work is a lazy graph: a stage runs only if an active tap needs it
+    private final ProcessingGraph graph = new ProcessingGraph();
+    private final ProcessingGraph.Frame frame = new ProcessingGraph.Frame();
+    private final DspStages.Level level = new DspStages.Level();
+    private final DspStages.Loudness loudness = new DspStages.Loudness(level);
+    private final DspStages.Analysis analysis = new DspStages.Analysis(fft.size);
+    private final DspStages.Windowed windowed = new DspStages.Windowed(analysis);
+    private final DspStages.Spectrum spectrum = new DspStages.Spectrum(windowed, fft);
+    private final DspStages.Magnitudes magnitudes = new DspStages.Magnitudes(spectrum);
+    private final DspStages.FixedMagnitudes fixedMagnitudes; // non-null when the Q15 path was selected
+    private final DspStages.MultiResMagnitudes multiResMagnitudes = new DspStages.MultiResMagnitudes(
+            MR_SHORT, MR_LONG, fft.size, MR_CROSSOVER_HZ, MR_BLEND_HZ);
+    private final DspStages.Column column;
+    private final DspStages.Onset onset;
+    private final DspStages.Pitch pitch = new DspStages.Pitch(analysis, new PitchTracker(1024));
+    private final DspStages.Bands bands = new DspStages.Bands(
+            BandEnergyBank.logBands(12, 125f, 6000f), 4f, BAND_MAX_WINDOW);
+    // Same graph, run every BAND_BLOCK samples rather than every hop, for consumers that
+    // want levels as the audio arrives instead of a hop's worth at once
+    private final ProcessingGraph blockGraph = new ProcessingGraph();
+    private final ProcessingGraph.Frame blockFrame = new ProcessingGraph.Frame();
+    private final ProcessingGraph[] graphs = {graph, blockGraph}; // for the allocation probe
+
+    // Waveform tracking
     private float[] currentWaveform;
-    private boolean isRecordingWaveform = false;
+    private volatile boolean isRecordingWaveform = false;
+
+    // Capture -> DSP hand-off: about a second of PCM, read in READ_SAMPLES blocks and
+    // consumed DSP_CHUNK at a time
+    private static final int READ_SAMPLES = 1024;
+    private static final long READ_RETRY_NANOS = 10_000_000L; // wait after a failed read
+    private static final int DSP_CHUNK = 256;
+
+    // Everything after the ring runs at one rate whatever the device negotiated, so FFT
+    // bin spacing, column rate and DSP cost are the same everywhere
+    public static final int DEFAULT_DSP_RATE = 16000;
+    private static final int HOP_MS = 32;       // 512 samples at 16 kHz, 50% overlap with the FFT
+    private volatile int dspRate = DEFAULT_DSP_RATE;
+    private volatile int activeDspRate = 0;     // rate of the running graph, 0 when stopped
+    private volatile long resampleNanos = 0;    // per DSP_CHUNK input samples
+    private volatile PcmRing ring;
+    private volatile long capturedSamples = 0;
+    private volatile long overrunSamples = 0; // estimated samples lost inside AudioRecord
+    private volatile int overrunCount = 0;
+    private long backlog = 0;                 // capture thread only, samples
+
+    private volatile AllocationProbe allocationProbe;
+    private volatile String allocationReport;
+
+    // Zero-buffer diagnostics, DSP thread only
+    private int zeroCount = 0;
+    private int totalReads = 0;
+    private int hopFill = 0;                  // samples of frame.pcm filled so far, DSP thread only
+    private int blockFill = 0;                // samples of blockFrame.pcm filled so far, DSP thread only
 
     public AudioEngine(Context ctx, int preferredSampleRate) {
+        this(ctx, preferredSampleRate, false);
+    }
+
+    /** @param fixedPointFft use the Q15 {@link FixedFFT} for the single-resolution spectrum */
+    public AudioEngine(Context ctx, int preferredSampleRate, boolean fixedPointFft) {
         this.ctx = ctx;
         this.sampleRate = preferredSampleRate;
         currentWaveform = new float[1024];
+        fixedMagnitudes = fixedPointFft ? new DspStages.FixedMagnitudes(analysis, new FixedFFT(fft.size)) : null;
+        column = new DspStages.Column(magnitudes, fixedMagnitudes, multiResMagnitudes, MR_BUDGET);
+        onset = new DspStages.Onset(column);
+        attachBuiltInTaps();
+    }
+
+    // Built-in consumers, in the order the old fixed loop ran them. Each is active only
+    // while someone listens, so e.g. with just the meter subscribed no FFT runs.
+    private void attachBuiltInTaps() {
+        graph.attach(loudness, new ProcessingGraph.Tap() {
+            @Override public boolean isActive() { return !loudnessListeners.isEmpty(); }
+            @Override public void onFrame(ProcessingGraph.Frame f) {
+                for (LoudnessListener l : loudnessListeners.snapshot()) l.onLoudnessUpdate(loudness.smoothed);
+            }
+        });
+        // The hop is only 512 samples; the analysis stage keeps the latest 1024
+        graph.attach(analysis, new ProcessingGraph.Tap() {
+            @Override public boolean isActive() { return isRecordingWaveform; }
+            @Override public void onFrame(ProcessingGraph.Frame f) {
+                short[] pcm = analysis.pcm;
+                int len = Math.min(currentWaveform.length, pcm.length);
+                for (int i = 0; i < len; i++) {
+                    currentWaveform[i] = pcm[i] / 32768f; // Normalize
+                }
+            }
+        });
+        graph.attach(level, new ProcessingGraph.Tap() {
+            @Override public void onFrame(ProcessingGraph.Frame f) { checkSilence(); }
+        });
+        blockGraph.attach(bands, new ProcessingGraph.Tap() {
+            @Override public boolean isActive() { return !bandLevelListeners.isEmpty(); }
+            @Override public void onFrame(ProcessingGraph.Frame f) {
+                for (BandLevelListener l : bandLevelListeners.snapshot()) l.onBandLevels(f.timeNanos, bands.levels);
+            }
+        });
+        // Reads the column stage, so it adds no FFT of its own on any spectrum path
+        graph.attach(onset, new ProcessingGraph.Tap() {
+            @Override public boolean isActive() { return !stressListeners.isEmpty(); }
+            @Override public void onFrame(ProcessingGraph.Frame f) {
+                if (!onset.onset) return;
+                for (StressListener l : stressListeners.snapshot()) l.onStress(onset.time, onset.strength);
+            }
+        });
+        // Pitch runs before the column so sinks can tint it with this frame's F0
+        graph.attach(pitch, new ProcessingGraph.Tap() {
+            @Override public boolean isActive() { return !pitchListeners.isEmpty(); }
+            @Override public void onFrame(ProcessingGraph.Frame f) {
+                for (PitchListener l : pitchListeners.snapshot()) l.onPitch(f.timeNanos, pitch.f0, pitch.confidence);
+            }
+        });
+        graph.attach(column, new ProcessingGraph.Tap() {
+            @Override public boolean isActive() { return !spectrogramSinks.isEmpty(); }
+            @Override public void onFrame(ProcessingGraph.Frame f) {
+                for (SpectrogramSink s : spectrogramSinks.snapshot()) s.onSpectrogramColumn(column.mags);
+            }
+        });
     }
 
     public void addSpectrogramSink(SpectrogramSink s){
@@ -41,11 +173,219 @@ public class AudioEngine implements Runnable {
         if (s instanceof LoudnessListener) {
             loudnessListeners.add((LoudnessListener) s);
         }
+        // Likewise for pitch, so a tinting view gets F0 before each column
+        if (s instanceof PitchListener) {
+            pitchListeners.add((PitchListener) s);
+        }
     }
 
     // NEW METHODS - These were missing!
     public void addLoudnessListener(LoudnessListener l){ loudnessListeners.add(l); }
     public void addWaveformListener(WaveformListener l){ waveformListeners.add(l); }
+    public void addPitchListener(PitchListener l){ pitchListeners.add(l); }
+    public void addBandLevelListener(BandLevelListener l){ bandLevelListeners.add(l); }
+    public void addStressListener(StressListener l){ stressListeners.add(l); }
+
+    // Subscriptions with explicit delivery. Async ones return their handle for lag/drop
+    // counters; SYNC returns null. Unlike addSpectrogramSink(s), these register only the
+    // one interface named, so each callback type can get its own policy.
+    public AsyncSubscriber addSpectrogramSink(SpectrogramSink s, Delivery d) {
+        if (!d.async) { spectrogramSinks.add(s); return null; }
+        AsyncSubscriber.Spectrogram a = new AsyncSubscriber.Spectrogram(s, d, fft.size / 2); // every column path has this many bins
+        registerAsync(a);
+        spectrogramSinks.add(a);
+        return a;
+    }
+
+    public AsyncSubscriber addLoudnessListener(LoudnessListener l, Delivery d) {
+        if (!d.async) { loudnessListeners.add(l); return null; }
+        AsyncSubscriber.Loudness a = new AsyncSubscriber.Loudness(l, d);
+        registerAsync(a);
+        loudnessListeners.add(a);
+        return a;
+    }
+
+    public AsyncSubscriber addWaveformListener(WaveformListener l, Delivery d) {
+        if (!d.async) { waveformListeners.add(l); return null; }
+        AsyncSubscriber.Waveform a = new AsyncSubscriber.Waveform(l, d, currentWaveform.length);
+        registerAsync(a);
+        waveformListeners.add(a);
+        return a;
+    }
+
+    public AsyncSubscriber addPitchListener(PitchListener l, Delivery d) {
+        if (!d.async) { pitchListeners.add(l); return null; }
+        AsyncSubscriber.Pitch a = new AsyncSubscriber.Pitch(l, d);
+        registerAsync(a);
+        pitchListeners.add(a);
+        return a;
+    }
+
+    public AsyncSubscriber addBandLevelListener(BandLevelListener l, Delivery d) {
+        if (!d.async) { bandLevelListeners.add(l); return null; }
+        AsyncSubscriber.BandLevels a = new AsyncSubscriber.BandLevels(l, d, bands.bandCount());
+        registerAsync(a);
+        bandLevelListeners.add(a);
+        return a;
+    }
+
+    public AsyncSubscriber addStressListener(StressListener l, Delivery d) {
+        if (!d.async) { stressListeners.add(l); return null; }
+        AsyncSubscriber.Stress a = new AsyncSubscriber.Stress(l, d);
+        registerAsync(a);
+        stressListeners.add(a);
+        return a;
+    }
+
+    public void removeSpectrogramSink(SpectrogramSink s){
+        removeFrom(spectrogramSinks, s);
+        // Undo addSpectrogramSink(s)'s automatic registrations
+        if (s instanceof LoudnessListener) removeFrom(loudnessListeners, s);
+        if (s instanceof PitchListener) removeFrom(pitchListeners, s);
+    }
+    public void removeLoudnessListener(LoudnessListener l){ removeFrom(loudnessListeners, l); }
+    public void removeWaveformListener(WaveformListener l){ removeFrom(waveformListeners, l); }
+    public void removePitchListener(PitchListener l){ removeFrom(pitchListeners, l); }
+    public void removeBandLevelListener(BandLevelListener l){ removeFrom(bandLevelListeners, l); }
+    public void removeStressListener(StressListener l){ removeFrom(stressListeners, l); }
+
+    /** The async handle delivering to listener, or null if it is subscribed synchronously. */
+    public AsyncSubscriber getAsyncSubscriber(Object listener) {
+        for (AsyncSubscriber a : asyncSubscribers) if (a.target() == listener) return a;
+        return null;
+    }
+
+    public List<AsyncSubscriber> getAsyncSubscribers() {
+        return Collections.unmodifiableList(asyncSubscribers);
+    }
+
+    private void registerAsync(AsyncSubscriber a) {
+        asyncSubscribers.add(a);
+        a.start();
+    }
+
+    // Removes l itself or the async wrapper delivering to it
+    private <T> void removeFrom(ListenerList<T> list, Object l) {
+        for (T item : list.snapshot()) {
+            if (item == l) {
+                list.remove(item);
+            } else if (item instanceof AsyncSubscriber && ((AsyncSubscriber) item).target() == l) {
+                list.remove(item);
+                asyncSubscribers.remove(item);
+                ((AsyncSubscriber) item).stop();
+            }
+        }
+    }
+
+    /** Replaces the band set; takes effect on the DSP thread at the next block. */
+    public void setBands(float[] centersHz, float q) {
+        bands.configure(centersHz.clone(), q);
+    }
+
+    public void setMultiResolution(boolean enabled) {
+        if (enabled != column.multiResolution) multiResMagnitudes.resetBudget(); // start each run at full resolution
+        column.multiResolution = enabled;
+        Log.d(TAG, "Multi-resolution spectrum " + (enabled ? "enabled" : "disabled"));
+    }
+
+    public boolean isMultiResolution() { return column.multiResolution; }
+
+    /**
+     * The per-frame graph. Taps may be attached to any stage below (or a custom stage
+     * built on them) and detached again while capture runs.
+     */
+    public ProcessingGraph getGraph() { return graph; }
+
+    /**
+     * The graph run every BAND_BLOCK (128) samples instead of every hop; its frames are
+     * those short blocks. The band stage lives here.
+     */
+    public ProcessingGraph getBlockGraph() { return blockGraph; }
+
+    public DspStages.Level getLevelStage() { return level; }
+    public DspStages.Loudness getLoudnessStage() { return loudness; }
+    public DspStages.Spectrum getSpectrumStage() { return spectrum; }
+    public DspStages.Magnitudes getMagnitudeStage() { return magnitudes; }
+    /** The spectrogram column, whichever spectrum path is selected. */
+    public DspStages.Column getColumnStage() { return column; }
+    public DspStages.Onset getOnsetStage() { return onset; }
+    public DspStages.Pitch getPitchStage() { return pitch; }
+    /** Runs on {@link #getBlockGraph()}. */
+    public DspStages.Bands getBandStage() { return bands; }
+
+    /**
+     * Rate the DSP graph runs at; capture is resampled to it. 0 processes at whatever
+     * rate capture negotiated. Takes effect at the next start().
+     */
+    public void setDspRate(int hz) { dspRate = hz; }
+
+    /** Rate frames are delivered at while running (0 when stopped). */
+    public int getDspRate() { return activeDspRate; }
+
+    /** Rate AudioRecord negotiated. */
+    public int getCaptureRate() { return sampleRate; }
+
+    /** Smoothed resampler cost per second of audio, in ns (0 when capture is already at the DSP rate). */
+    public long getResamplerNanosPerSecond() {
+        return resampleNanos * sampleRate / DSP_CHUNK;
+    }
+
+    /**
+     * Checks the running DSP thread for steady-state allocation: after warmupFrames,
+     * counts bytes allocated per frame by the loop, each stage and each tap over
+     * measureFrames, logs the result (as an error if anything exceeds
+     * budgetBytesPerFrame) and keeps it for {@link #getAllocationReport()}. The
+     * expected figure with every listener attached is zero.
+     */
+    public void probeAllocations(int warmupFrames, int measureFrames, long budgetBytesPerFrame) {
+        allocationReport = null;
+        allocationProbe = new AllocationProbe(warmupFrames, measureFrames, budgetBytesPerFrame);
+    }
+
+    /** Result of the last completed {@link #probeAllocations} run, or null. */
+    public String getAllocationReport() { return allocationReport; }
+
+    /** Fraction of the PCM ring currently queued for the DSP thread (0 when not running). */
+    public float getRingOccupancy() {
+        PcmRing r = ring;
+        return r == null ? 0f : r.available() / (float) r.capacity();
+    }
+
+    /** Highest ring occupancy since start, as a fraction of capacity. */
+    public float getRingPeakOccupancy() {
+        PcmRing r = ring;
+        return r == null ? 0f : r.getPeak() / (float) r.capacity();
+    }
+
+    /** Samples captured but dropped because the DSP thread fell a whole ring behind. */
+    public long getDroppedSamples() {
+        PcmRing r = ring;
+        return r == null ? 0 : r.getDroppedSamples();
+    }
+
+    /** Estimated samples AudioRecord overwrote because the capture thread read too late. */
+    public long getOverrunSamples() { return overrunSamples; }
+
+    /** Number of distinct AudioRecord overruns detected. */
+    public int getOverrunCount() { return overrunCount; }
+
+    /** Samples read from AudioRecord since start. */
+    public long getCapturedSamples() { return capturedSamples; }
+
+    /** Smoothed cost of one single-FFT column in ns (0 until that path has run). */
+    public long getSingleFftNanos() {
+        if (fixedMagnitudes != null) return fixedMagnitudes.getNanos();
+        return windowed.getNanos() + spectrum.getNanos() + magnitudes.getNanos();
+    }
+
+    /** Smoothed cost of one multi-resolution column in ns (0 until that path has run). */
+    public long getMultiResolutionNanos() { return multiResMagnitudes.getNanos(); }
+
+    /** Smoothed band-bank cost per 128-sample block in ns (0 until a band listener is attached). */
+    public long getBandNanos() { return bands.getNanos(); }
+
+    /** Smoothed cost of one pitch estimate in ns (0 until a pitch listener is attached). */
+    public long getPitchNanos() { return pitch.getNanos(); }
 
     public void startWaveformRecording() {
         isRecordingWaveform = true;
@@ -58,7 +398,7 @@ public class AudioEngine implements Runnable {
         // Notify listeners with final waveform
         if (!waveformListeners.isEmpty()) {
             float[] waveformCopy = currentWaveform.clone();
-            for (WaveformListener l : waveformListeners) {
+            for (WaveformListener l : waveformListeners.snapshot()) {
                 l.onWaveformComplete(waveformCopy);
             }
         }
@@ -67,136 +407,253 @@ public class AudioEngine implements Runnable {
     public void start() {
         Log.d(TAG, "AudioEngine.start");
         if (running) return;
+        EventTrace.event(EventTrace.ENGINE_START);
         running = true;
+        for (AsyncSubscriber a : asyncSubscribers) a.start();
         thread = new Thread(this, "AudioEngine");
         thread.start();
     }
 
     public void stop() {
         Log.d(TAG, "AudioEngine.stop");
+        EventTrace.event(EventTrace.ENGINE_STOP);
         running = false;
         if (thread != null) { try { thread.join(500); } catch (InterruptedException ignore) {} }
         safeRelease();
+        for (AsyncSubscriber a : asyncSubscribers) a.stop();
     }
 
     public void run() {
-        android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
 
         if (!initRecorder()) {
             Log.e(TAG, "AudioRecord init failed for all tried rates/sources");
+            EventTrace.event(EventTrace.RECORDER_INIT_FAILED);
             return; // spectrogram will stay still
         }
 
-        short[] buffer = new short[1024];
-        double[] window = new double[buffer.length];
-        for (int i=0;i<window.length;i++) {
-            window[i] = 0.5 * (1 - Math.cos(2*Math.PI*i/(window.length-1))); // Hann
-        }
+        short[] buffer = new short[READ_SAMPLES];
 
         try {
             // Add delay before starting recording to ensure initialization
             Thread.sleep(100);
             recorder.startRecording();
             Log.d(TAG, "AudioRecord startRecording @ " + sampleRate + " Hz, buf=" + bufSize);
+            EventTrace.event(EventTrace.RECORDING_STARTED, sampleRate, bufSize);
 
             // Check recording state
             if (recorder.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
                 Log.e(TAG, "AudioRecord failed to start recording! State: " + recorder.getRecordingState());
+                EventTrace.event(EventTrace.RECORDING_NOT_STARTED, recorder.getRecordingState());
                 return;
             }
 
-            int zeroCount = 0;
-            int totalReads = 0;
+            ring = new PcmRing(sampleRate);
+            capturedSamples = 0;
+            overrunSamples = 0;
+            overrunCount = 0;
+            backlog = 0;
+            startDspThread();
 
+            long prevReturn = 0;
+            boolean dropping = false;
+            int failedReads = 0; // in a row
             while (running) {
                 int n;
+                long tCall = System.nanoTime();
                 try {
                     n = recorder.read(buffer, 0, buffer.length);
                 } catch (Throwable t) {
                     Log.e(TAG, "read error", t);
+                    EventTrace.event(EventTrace.CAPTURE_ERROR);
                     break;
                 }
+                long tReturn = System.nanoTime();
 
                 if (n <= 0) {
-                    Log.w(TAG, "AudioRecord.read returned: " + n);
-                    continue;
-                }
-
-                totalReads++;
-
-                // Calculate loudness (RMS) and track peaks
-                float rms = 0f;
-                int absSum = 0;
-                int maxVal = 0;
-                for (int i = 0; i < n; i++) {
-                    int abs = Math.abs(buffer[i]);
-                    absSum += abs;
-                    rms += buffer[i] * buffer[i];
-                    if (abs > maxVal) maxVal = abs;
-                }
-                rms = (float) Math.sqrt(rms / n) / 32768f; // Normalize to 0-1
-
-                // Smooth loudness using rolling buffer
-                loudnessBuffer[loudnessIndex] = rms;
-                loudnessIndex = (loudnessIndex + 1) % loudnessBuffer.length;
-                float smoothLoudness = 0f;
-                for (float l : loudnessBuffer) smoothLoudness += l;
-                smoothLoudness /= loudnessBuffer.length;
-
-                // Update loudness listeners
-                if (!loudnessListeners.isEmpty()) {
-                    for (LoudnessListener l : loudnessListeners) {
-                        l.onLoudnessUpdate(smoothLoudness);
-                    }
-                }
-
-                // Store waveform if recording
-                if (isRecordingWaveform) {
-                    int len = Math.min(currentWaveform.length, n);
-                    for (int i = 0; i < len; i++) {
-                        currentWaveform[i] = buffer[i] / 32768f; // Normalize
+                    // A failing recorder returns at once, so back off rather than spin, and
+                    // trace only the 1st, 2nd, 4th, 8th... failure of a run so it cannot
+                    // flood the ring
+                    failedReads++;
+                    if ((failedReads & (failedReads - 1)) == 0) {
+                        EventTrace.event(EventTrace.READ_RETURNED, n, failedReads);
                     }
+                    prevReturn = 0; // the gap is not an overrun
+                    backlog = 0;
+                    LockSupport.parkNanos(this, READ_RETRY_NANOS);
+                    continue;
                 }
-
-                // Debug audio detection
-                if (absSum == 0) {
-                    zeroCount++;
-                    if (zeroCount % 50 == 0) { // Log every 50th zero buffer to avoid spam
-                        Log.w(TAG, "Audio buffer is all zeros (count: " + zeroCount + "/" + totalReads + ")");
-                        Log.w(TAG, "Recording state: " + recorder.getRecordingState() +
-                                ", Audio state: " + recorder.getState());
-                    }
-                } else {
-                    if (zeroCount > 0) {
-                        Log.i(TAG, "Audio detected! Max value: " + maxVal + ", RMS: " + rms +
-                                " (after " + zeroCount + " zero buffers)");
-                        zeroCount = 0; // Reset counter when we get audio
-                    }
+                if (failedReads > 0) {
+                    EventTrace.event(EventTrace.READ_RECOVERED, failedReads);
+                    failedReads = 0;
                 }
 
-                // FFT for spectrogram
-                int N = Math.min(n, fft.size);
-                double[] re = new double[fft.size];
-                double[] im = new double[fft.size];
-                for (int i=0;i<N;i++) re[i] = buffer[i] / 32768.0 * window[i];
-                fft.fft(re, im);
-                float[] mags = new float[fft.size/2];
-                for (int i=0;i<mags.length;i++) {
-                    mags[i] = (float)Math.sqrt(re[i]*re[i] + im[i]*im[i]);
-                }
+                if (prevReturn != 0) trackOverrun(tReturn - prevReturn, tReturn - tCall, n);
+                prevReturn = tReturn;
+                capturedSamples += n;
 
-                if (!spectrogramSinks.isEmpty()) {
-                    for (SpectrogramSink s : spectrogramSinks) s.onSpectrogramColumn(mags);
+                boolean accepted = ring.offer(buffer, n);
+                if (!accepted && !dropping) {
+                    EventTrace.event(EventTrace.RING_DROP, (int) Math.min(Integer.MAX_VALUE, ring.getDroppedSamples()));
                 }
+                dropping = !accepted;
+                LockSupport.unpark(dspThread);
             }
         } catch (Throwable t) {
             Log.e(TAG, "Audio thread error", t);
+            EventTrace.event(EventTrace.CAPTURE_ERROR);
         } finally {
+            stopDspThread();
             try { if (recorder != null) recorder.stop(); } catch (Exception ignore) {}
             safeRelease();
         }
     }
 
+    // AudioRecord holds bufSize bytes; whatever arrives beyond that between two reads is
+    // overwritten. The backlog estimate is audio that arrived since the last read minus
+    // what this read took. A read that had to wait found the buffer empty, which resets
+    // the estimate and so keeps clock drift from accumulating.
+    private void trackOverrun(long sinceLastNanos, long readNanos, int n) {
+        long capacity = bufSize / 2;
+        backlog = Math.max(0, backlog + sinceLastNanos * sampleRate / 1_000_000_000L - n);
+        if (backlog > capacity) {
+            overrunSamples += backlog - capacity;
+            overrunCount++;
+            EventTrace.event(EventTrace.OVERRUN, (int) (backlog - capacity), overrunCount);
+            backlog = capacity;
+        }
+        if (readNanos > n * 500_000_000L / sampleRate) backlog = 0;
+    }
+
+    private void startDspThread() {
+        dspRunning = true;
+        dspThread = new Thread(new Runnable() {
+            @Override public void run() { dspLoop(); }
+        }, "AudioDsp");
+        dspThread.start();
+    }
+
+    private void stopDspThread() {
+        dspRunning = false;
+        if (dspThread != null) {
+            LockSupport.unpark(dspThread);
+            try { dspThread.join(500); } catch (InterruptedException ignore) {}
+            dspThread = null;
+        }
+    }
+
+    private void dspLoop() {
+        android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        int inRate = sampleRate;
+        int outRate = dspRate > 0 ? dspRate : inRate;
+        Resampler resampler = outRate != inRate ? new Resampler(inRate, outRate) : null;
+        int hop = Math.max(1, outRate * HOP_MS / 1000);
+        short[] in = new short[DSP_CHUNK];
+        short[] out = resampler != null ? new short[resampler.maxOutput(DSP_CHUNK)] : in;
+        startFrames(outRate, hop);
+        activeDspRate = outRate;
+        resampleNanos = 0;
+        Log.d(TAG, "DSP at " + outRate + " Hz, hop " + hop + (resampler != null
+                ? ", resampling from " + inRate + " Hz with " + resampler.taps() + " taps" : ""));
+        EventTrace.event(EventTrace.DSP_START, outRate, inRate, hop);
+        try {
+            while (dspRunning) {
+                PcmRing r = ring;
+                if (!r.poll(in, DSP_CHUNK)) {
+                    LockSupport.parkNanos(this, 5_000_000L); // capture unparks us on every write
+                    continue;
+                }
+                int produced = DSP_CHUNK;
+                if (resampler != null) {
+                    long t0 = System.nanoTime();
+                    produced = resampler.process(in, DSP_CHUNK, out);
+                    resampleNanos = smoothNanos(resampleNanos, System.nanoTime() - t0);
+                }
+                // The chunk's last sample was captured before everything still queued behind it
+                processChunk(out, produced, System.nanoTime() - r.available() * 1_000_000_000L / inRate);
+            }
+        } catch (Throwable t) {
+            Log.e(TAG, "DSP thread error", t);
+            EventTrace.event(EventTrace.DSP_ERROR);
+        } finally {
+            activeDspRate = 0;
+        }
+    }
+
+    // Starts assembling hop-sized frames at rate; DSP thread only
+    void startFrames(int rate, int hop) {
+        frame.pcm = new short[hop];
+        frame.sampleRate = rate;
+        hopFill = 0;
+        blockFrame.pcm = new short[BAND_BLOCK];
+        blockFrame.sampleRate = rate;
+        blockFill = 0;
+        zeroCount = 0;
+        totalReads = 0;
+    }
+
+    // Everything the DSP thread does with n samples at the DSP rate: runs the block graph
+    // once per completed BAND_BLOCK and the graph once per completed hop. endNanos is
+    // when pcm[n-1] was captured. Package-private so tests can drive the real per-frame
+    // path without an AudioRecord.
+    void processChunk(short[] pcm, int n, long endNanos) {
+        short[] small = blockFrame.pcm;
+        for (int i = 0; i < n; ) {
+            int take = Math.min(n - i, BAND_BLOCK - blockFill);
+            System.arraycopy(pcm, i, small, blockFill, take);
+            blockFill += take;
+            i += take;
+            if (blockFill < BAND_BLOCK) break;
+            blockFill = 0;
+            blockFrame.index++;
+            blockFrame.length = BAND_BLOCK;
+            blockFrame.timeNanos = endNanos - (n - i) * 1_000_000_000L / blockFrame.sampleRate;
+            blockGraph.process(blockFrame);
+        }
+
+        short[] block = frame.pcm;
+        int hop = block.length;
+        for (int i = 0; i < n; ) {
+            int take = Math.min(n - i, hop - hopFill);
+            System.arraycopy(pcm, i, block, hopFill, take);
+            hopFill += take;
+            i += take;
+            if (hopFill < hop) break;
+            hopFill = 0;
+            totalReads++;
+            frame.index++;
+            frame.length = hop;
+            frame.timeNanos = endNanos - (n - i) * 1_000_000_000L / frame.sampleRate;
+            graph.process(frame);
+            AllocationProbe probe = allocationProbe;
+            if (probe != null && probe.afterFrame(graphs)) {
+                allocationReport = probe.getReport();
+                allocationProbe = null;
+            }
+        }
+    }
+
+    private static long smoothNanos(long avg, long sample) {
+        return avg == 0 ? sample : avg + (sample - avg) / 16;
+    }
+
+    // Debug audio detection; traced rather than logged since it runs every frame
+    private void checkSilence() {
+        if (level.absSum == 0) {
+            zeroCount++;
+            if (zeroCount % 50 == 0) { // Trace every 50th zero buffer to avoid spam
+                AudioRecord r = recorder;
+                EventTrace.event(EventTrace.SILENT_BUFFERS, zeroCount, totalReads,
+                        r != null ? r.getRecordingState() : -1);
+            }
+        } else {
+            if (zeroCount > 0) {
+                EventTrace.event(EventTrace.AUDIO_RESUMED, level.maxVal, (int) (level.rms * 10000), zeroCount);
+                zeroCount = 0; // Reset counter when we get audio
+            }
+        }
+    }
+
     private boolean initRecorder() {
         // Try sources in order of preference for Glass EE
         final int[] SOURCES = new int[] {
@@ -213,7 +670,7 @@ public class AudioEngine implements Runnable {
                         AudioFormat.CHANNEL_IN_MONO,
                         AudioFormat.ENCODING_PCM_16BIT);
                 if (min <= 0) {
-                    Log.w(TAG, "getMinBufferSize returned " + min + " for " + rate + " Hz");
+                    EventTrace.event(EventTrace.RECORDER_MIN_BUFFER, rate, min);
                     continue;
                 }
 
@@ -221,7 +678,7 @@ public class AudioEngine implements Runnable {
                 int tryBuf = Math.max(min * 4, 4096);
 
                 try {
-                    Log.d(TAG, "Trying AudioRecord: src=" + getSourceName(src) + " rate=" + rate + " buf=" + tryBuf);
+                    EventTrace.event(EventTrace.RECORDER_TRY, src, rate, tryBuf);
 
                     AudioRecord r = new AudioRecord(src, rate,
                             AudioFormat.CHANNEL_IN_MONO,
@@ -244,17 +701,19 @@ public class AudioEngine implements Runnable {
                             bufSize = tryBuf;
                             Log.i(TAG, "AudioRecord SUCCESS: src=" + getSourceName(src) +
                                     " rate=" + rate + " buf=" + tryBuf + " testRead=" + testRead);
+                            EventTrace.event(EventTrace.RECORDER_OK, src, rate, tryBuf);
                             return true;
                         } else {
-                            Log.w(TAG, "AudioRecord test read failed: " + testRead);
+                            EventTrace.event(EventTrace.RECORDER_TEST_READ, src, rate, testRead);
                             r.release();
                         }
                     } else {
-                        Log.w(TAG, "AudioRecord STATE_UNINITIALIZED: src=" + getSourceName(src) + " rate=" + rate);
+                        EventTrace.event(EventTrace.RECORDER_UNINITIALIZED, src, rate);
                         r.release();
                     }
                 } catch (Throwable t) {
                     Log.w(TAG, "AudioRecord init exception: src=" + getSourceName(src) + " rate=" + rate, t);
+                    EventTrace.event(EventTrace.RECORDER_EXCEPTION, src, rate);
                 }
             }
         }
@@ -282,7 +741,14 @@ public class AudioEngine implements Runnable {
     }
 
     // INTERFACES - These were missing!
+    /** mags is reused by the engine; copy it to keep it past the callback. */
     public interface SpectrogramSink { void onSpectrogramColumn(float[] mags); }
     public interface LoudnessListener { void onLoudnessUpdate(float loudness); }
     public interface WaveformListener { void onWaveformComplete(float[] waveform); }
+    /** f0 is 0 for unvoiced frames; timestampNanos is System.nanoTime() when the frame was read. */
+    public interface PitchListener { void onPitch(long timestampNanos, float f0, float confidence); }
+    /** levels is reused by the engine; copy it to keep it past the callback. */
+    public interface BandLevelListener { void onBandLevels(long timestampNanos, float[] levels); }
+    /** Spectral-flux onset at timestampNanos (System.nanoTime()); strength is relative to recent onsets. */
+    public interface StressListener { void onStress(long timestampNanos, float strength); }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * How {@link AudioEngine} hands results to one subscriber: synchronously on the audio
+ * thread (the default), or through that subscriber's own bounded queue and thread.
+ */
+public final class Delivery {
+    public enum DropPolicy {
+        /** Queue full: overwrite the oldest queued item (keeps the most recent history). */
+        DROP_OLDEST,
+        /** Queue full: discard the incoming item (keeps what is already queued). */
+        DROP_NEWEST,
+        /** Keep only the latest item; anything not yet delivered is replaced. */
+        COALESCE_LATEST
+    }
+
+    public static final Delivery SYNC = new Delivery(false, 0, DropPolicy.DROP_NEWEST);
+
+    public final boolean async;
+    public final int capacity;
+    public final DropPolicy policy;
+
+    private Delivery(boolean async, int capacity, DropPolicy policy) {
+        this.async = async;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    public static Delivery async(int capacity, DropPolicy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        return new Delivery(true, policy == DropPolicy.COALESCE_LATEST ? 1 : capacity, policy);
+    }
+}
@@ -0,0 +1,375 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import com.srikanth.glasscaptionsviz.viz.ProcessingGraph.Frame;
+import com.srikanth.glasscaptionsviz.viz.ProcessingGraph.Stage;
+
+import java.util.Arrays;
+
+/**
+ * The engine's built-in {@link ProcessingGraph} stages. Results are public fields,
+ * valid on the audio thread after the stage has been pulled for the current frame
+ * and overwritten by the next one; nothing here allocates per frame.
+ */
+public final class DspStages {
+    private DspStages() {}
+
+    /** RMS (0-1), absolute sum and peak of the raw block. */
+    public static final class Level extends Stage {
+        public float rms;
+        public long absSum;
+        public int maxVal;
+
+        Level() { super("level"); }
+
+        @Override protected void compute(Frame f) {
+            short[] pcm = f.pcm;
+            int n = f.length;
+            float sum = 0f;
+            long abs = 0;
+            int max = 0;
+            for (int i=0;i<n;i++) {
+                int a = Math.abs(pcm[i]);
+                abs += a;
+                sum += pcm[i] * pcm[i];
+                if (a > max) max = a;
+            }
+            rms = (float) Math.sqrt(sum / n) / 32768f;
+            absSum = abs;
+            maxVal = max;
+        }
+    }
+
+    /** Level RMS averaged over the last 50 blocks, for the meter. */
+    public static final class Loudness extends Stage {
+        public float smoothed;
+        private final Level level;
+        private final float[] buffer = new float[50];
+        private int index = 0;
+
+        Loudness(Level level) {
+            super("loudness", level);
+            this.level = level;
+        }
+
+        @Override protected void compute(Frame f) {
+            buffer[index] = level.rms;
+            index = (index + 1) % buffer.length;
+            float s = 0f;
+            for (float l : buffer) s += l;
+            smoothed = s / buffer.length;
+        }
+    }
+
+    /**
+     * The last size samples, oldest first. Hops are shorter than the FFT, so successive
+     * analysis frames overlap; the first frames after the stage starts being pulled
+     * hold stale or zero samples at the start.
+     */
+    public static final class Analysis extends Stage {
+        public final short[] pcm;
+
+        Analysis(int size) {
+            super("analysis");
+            pcm = new short[size];
+        }
+
+        @Override protected void compute(Frame f) {
+            int size = pcm.length;
+            int n = Math.min(f.length, size);
+            System.arraycopy(pcm, n, pcm, 0, size - n);
+            System.arraycopy(f.pcm, f.length - n, pcm, size - n, n);
+        }
+    }
+
+    /** Hann-windowed analysis frame. */
+    public static final class Windowed extends Stage {
+        public final double[] re;
+        private final Analysis analysis;
+        private final double[] window;
+
+        Windowed(Analysis analysis) {
+            super("window", analysis);
+            this.analysis = analysis;
+            int size = analysis.pcm.length;
+            re = new double[size];
+            window = new double[size];
+            for (int i=0;i<size;i++) {
+                window[i] = 0.5 * (1 - Math.cos(2*Math.PI*i/(size-1))); // Hann
+            }
+        }
+
+        @Override protected void compute(Frame f) {
+            short[] pcm = analysis.pcm;
+            for (int i=0;i<re.length;i++) re[i] = pcm[i] / 32768.0 * window[i];
+        }
+    }
+
+    /** Complex spectrum of the windowed block. */
+    public static final class Spectrum extends Stage {
+        public final double[] re;
+        public final double[] im;
+        private final Windowed windowed;
+        private final FFT fft;
+
+        Spectrum(Windowed windowed, FFT fft) {
+            super("fft", windowed);
+            this.windowed = windowed;
+            this.fft = fft;
+            re = new double[fft.size];
+            im = new double[fft.size];
+        }
+
+        @Override protected void compute(Frame f) {
+            System.arraycopy(windowed.re, 0, re, 0, re.length);
+            Arrays.fill(im, 0);
+            fft.fft(re, im);
+        }
+    }
+
+    /** Linear magnitudes of the first half of the spectrum. */
+    public static final class Magnitudes extends Stage {
+        public final float[] mags;
+        private final Spectrum spectrum;
+
+        Magnitudes(Spectrum spectrum) {
+            super("magnitude", spectrum);
+            this.spectrum = spectrum;
+            mags = new float[spectrum.re.length / 2];
+        }
+
+        @Override protected void compute(Frame f) {
+            double[] re = spectrum.re, im = spectrum.im;
+            for (int i=0;i<mags.length;i++) {
+                mags[i] = (float)Math.sqrt(re[i]*re[i] + im[i]*im[i]);
+            }
+        }
+    }
+
+    /** Magnitudes from the Q15 FFT; replaces window/fft/magnitude when selected. */
+    public static final class FixedMagnitudes extends Stage {
+        public final float[] mags;
+        private final Analysis analysis;
+        private final FixedFFT fft;
+
+        FixedMagnitudes(Analysis analysis, FixedFFT fft) {
+            super("fixed-fft", analysis);
+            this.analysis = analysis;
+            this.fft = fft;
+            mags = new float[fft.size / 2];
+        }
+
+        @Override protected void compute(Frame f) {
+            fft.transform(analysis.pcm, analysis.pcm.length);
+            fft.magnitudes(mags);
+        }
+    }
+
+    /** Multi-resolution magnitudes on the same bin grid as {@link Magnitudes}. */
+    public static final class MultiResMagnitudes extends Stage {
+        // Budget hysteresis: a short frame comes back only after the column has cost
+        // under RESTORE_BELOW of the budget for RESTORE_AFTER frames (~3 s), and every
+        // change waits SETTLE frames for the smoothed cost to catch up with it
+        private static final float RESTORE_BELOW = 0.6f;
+        private static final int RESTORE_AFTER = 96;
+        private static final int SETTLE = 32;
+
+        public float[] mags;
+        private final int shortSize, longSize, refSize;
+        private final float crossoverHz, blendHz;
+        private MultiResolutionSpectrum multiRes;
+        private int rate;
+        private int fullShortFrames;
+        private int settle = 0;
+        private int calm = 0;
+        private volatile boolean budgetReset = false;
+
+        MultiResMagnitudes(int shortSize, int longSize, int refSize, float crossoverHz, float blendHz) {
+            super("multi-res");
+            this.shortSize = shortSize;
+            this.longSize = longSize;
+            this.refSize = refSize;
+            this.crossoverHz = crossoverHz;
+            this.blendHz = blendHz;
+        }
+
+        @Override protected void compute(Frame f) {
+            if (multiRes == null || rate != f.sampleRate) {
+                multiRes = new MultiResolutionSpectrum(shortSize, longSize, refSize);
+                multiRes.configure(f.sampleRate, crossoverHz, blendHz);
+                rate = f.sampleRate;
+                fullShortFrames = multiRes.getMaxShortFrames();
+            }
+            if (budgetReset) {
+                budgetReset = false;
+                multiRes.setMaxShortFrames(fullShortFrames);
+                settle = SETTLE;
+                calm = 0;
+            }
+            mags = multiRes.process(f.pcm, f.length);
+        }
+
+        /** Gives back any short frames the budget took; applied at the next frame. */
+        void resetBudget() { budgetReset = true; }
+
+        // Sheds a short frame while the column costs more than budget of a hop and
+        // restores one once it has stayed well under it
+        void enforceBudget(Frame f, float budget) {
+            if (settle > 0) {
+                settle--;
+                return;
+            }
+            long limit = (long) (f.length * 1_000_000_000L / f.sampleRate * budget);
+            long cost = getNanos();
+            // Frames beyond what a hop holds cost nothing, so neither shed nor restore them
+            int ceiling = Math.max(1, Math.min(fullShortFrames, f.length / shortSize));
+            int current = Math.min(multiRes.getMaxShortFrames(), ceiling);
+            if (cost > limit) {
+                calm = 0;
+                if (current > 1) {
+                    multiRes.setMaxShortFrames(current - 1);
+                    settle = SETTLE;
+                    EventTrace.event(EventTrace.MULTIRES_SHED, (int) (cost / 1000), current - 1);
+                }
+            } else if (current < ceiling && cost < limit * RESTORE_BELOW) {
+                if (++calm >= RESTORE_AFTER) {
+                    multiRes.setMaxShortFrames(current + 1);
+                    calm = 0;
+                    settle = SETTLE;
+                    EventTrace.event(EventTrace.MULTIRES_RESTORE, (int) (cost / 1000), current + 1);
+                }
+            } else {
+                calm = 0;
+            }
+        }
+    }
+
+    /**
+     * The spectrogram column: pulls whichever spectrum path is selected when it runs,
+     * so the others are never computed. Not wired with static inputs for that reason,
+     * so its cost includes the selected path's.
+     */
+    public static final class Column extends Stage {
+        public float[] mags;
+        volatile boolean multiResolution = false;
+        private final Magnitudes single;
+        private final FixedMagnitudes fixed; // null unless the Q15 path was selected
+        private final MultiResMagnitudes multi;
+        private final float multiResBudget;
+
+        Column(Magnitudes single, FixedMagnitudes fixed, MultiResMagnitudes multi, float multiResBudget) {
+            super("column");
+            this.single = single;
+            this.fixed = fixed;
+            this.multi = multi;
+            this.multiResBudget = multiResBudget;
+            alsoPulls(single, fixed, multi);
+        }
+
+        @Override protected void compute(Frame f) {
+            if (multiResolution) {
+                multi.pull(f);
+                multi.enforceBudget(f, multiResBudget);
+                mags = multi.mags;
+            } else if (fixed != null) {
+                fixed.pull(f);
+                mags = fixed.mags;
+            } else {
+                single.pull(f);
+                mags = single.mags;
+            }
+        }
+    }
+
+    /**
+     * Spectral-flux onsets on the spectrogram column, so they reuse whichever spectrum
+     * the column computed; onset is true on frames that report one.
+     */
+    public static final class Onset extends Stage {
+        public boolean onset;
+        public long time;       // when the onset peaked (one hop before the frame that reports it)
+        public float strength;  // relative to recent onsets; above 1 is more emphatic than usual
+        private final Column column;
+        private final OnsetDetector detector = new OnsetDetector();
+        private float[] source; // the column's array last frame; changes when the path does
+
+        Onset(Column column) {
+            super("onset", column);
+            this.column = column;
+        }
+
+        @Override protected void compute(Frame f) {
+            // Flux across a switch of spectrum path is not an onset
+            if (column.mags != source) {
+                if (source != null) detector.reset();
+                source = column.mags;
+            }
+            onset = detector.process(column.mags, f.sampleRate, f.timeNanos);
+            if (onset) {
+                time = detector.getOnsetTime();
+                strength = detector.getStrength();
+            }
+        }
+    }
+
+    /** F0 and confidence of the block (f0 is 0 when unvoiced). */
+    public static final class Pitch extends Stage {
+        public float f0;
+        public float confidence;
+        private final Analysis analysis;
+        private final PitchTracker tracker;
+
+        Pitch(Analysis analysis, PitchTracker tracker) {
+            super("pitch", analysis);
+            this.analysis = analysis;
+            this.tracker = tracker;
+        }
+
+        @Override protected void compute(Frame f) {
+            tracker.process(analysis.pcm, analysis.pcm.length, f.sampleRate);
+            f0 = tracker.getF0();
+            confidence = tracker.getConfidence();
+        }
+    }
+
+    /**
+     * Sliding-DFT band levels at the end of the frame. The engine runs this on its
+     * block graph, so a frame is one short block and levels follow the audio closely.
+     */
+    public static final class Bands extends Stage {
+        public float[] levels = new float[0];
+        private final int maxWindow;
+        private volatile float[] centersHz;
+        private volatile float q;
+        private BandEnergyBank bank;
+        private float[] bankCenters; // the config bank was built from
+        private int bankRate;
+
+        Bands(float[] centersHz, float q, int maxWindow) {
+            super("bands");
+            this.centersHz = centersHz;
+            this.q = q;
+            this.maxWindow = maxWindow;
+        }
+
+        /** Bands in the current set, i.e. the length levels will have. */
+        int bandCount() { return centersHz.length; }
+
+        /** Replaces the band set; takes effect at the next frame. */
+        void configure(float[] centersHz, float q) {
+            this.q = q;
+            this.centersHz = centersHz;
+        }
+
+        @Override protected void compute(Frame f) {
+            float[] centers = centersHz;
+            if (bank == null || bankCenters != centers || bankRate != f.sampleRate) {
+                bank = new BandEnergyBank(centers, q, f.sampleRate, maxWindow);
+                bankCenters = centers;
+                bankRate = f.sampleRate;
+                levels = new float[centers.length];
+            }
+            bank.process(f.pcm, 0, f.length);
+            System.arraycopy(bank.getLevels(), 0, levels, 0, levels.length);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide binary event trace: a preallocated ring of fixed records (System.nanoTime(),
+ * event id, three int args) that any thread can append to without locking, formatting or
+ * allocating. When the ring is full the oldest records are overwritten.
+ *
+ * Each writer claims a sequence number, takes its slot by swapping the stamp to invalid,
+ * fills it and then stamps it with the sequence, so {@link #dump(File)} can skip a
+ * record that was being overwritten while it was read. A writer that finds the slot
+ * already taken (the ring lapped a writer that was preempted mid-record) drops its
+ * record rather than wait. Dumps are decoded to text with {@link #decode} or
+ * from a shell with {@code java com.srikanth.glasscaptionsviz.viz.EventTrace trace.bin}.
+ */
+public final class EventTrace {
+    // Event ids. Keep them stable: they are what dumps record. Args are listed in NAMES.
+    public static final int ENGINE_START = 1;
+    public static final int ENGINE_STOP = 2;
+    public static final int RECORDER_MIN_BUFFER = 3;
+    public static final int RECORDER_TRY = 4;
+    public static final int RECORDER_OK = 5;
+    public static final int RECORDER_UNINITIALIZED = 6;
+    public static final int RECORDER_TEST_READ = 7;
+    public static final int RECORDER_EXCEPTION = 8;
+    public static final int RECORDER_INIT_FAILED = 9;
+    public static final int RECORDING_STARTED = 10;
+    public static final int RECORDING_NOT_STARTED = 11;
+    public static final int READ_RETURNED = 12;
+    public static final int CAPTURE_ERROR = 13;
+    public static final int RING_DROP = 14;
+    public static final int OVERRUN = 15;
+    public static final int DSP_START = 16;
+    public static final int DSP_ERROR = 17;
+    public static final int SILENT_BUFFERS = 18;
+    public static final int AUDIO_RESUMED = 19;
+    public static final int MULTIRES_SHED = 20;
+    public static final int STT_START = 21;
+    public static final int STT_UNAVAILABLE = 22;
+    public static final int STT_READY = 23;
+    public static final int STT_BEGIN = 24;
+    public static final int STT_END = 25;
+    public static final int STT_ERROR = 26;
+    public static final int STT_RESULTS = 27;
+    public static final int STT_PARTIAL = 28;
+    public static final int STT_RESTART = 29;
+    public static final int APP_EXIT = 30;
+    public static final int MULTIRES_RESTORE = 31;
+    public static final int READ_RECOVERED = 32;
+
+    // Decoder names, indexed by id; the words after the name label the args
+    private static final String[] NAMES = {
+            null,
+            "ENGINE_START",
+            "ENGINE_STOP",
+            "RECORDER_MIN_BUFFER rate result",
+            "RECORDER_TRY source rate buf",
+            "RECORDER_OK source rate buf",
+            "RECORDER_UNINITIALIZED source rate",
+            "RECORDER_TEST_READ source rate result",
+            "RECORDER_EXCEPTION source rate",
+            "RECORDER_INIT_FAILED",
+            "RECORDING_STARTED rate buf",
+            "RECORDING_NOT_STARTED state",
+            "READ_RETURNED result failed_in_a_row",
+            "CAPTURE_ERROR",
+            "RING_DROP dropped_total",
+            "OVERRUN lost count",
+            "DSP_START rate capture_rate hop",
+            "DSP_ERROR",
+            "SILENT_BUFFERS zeros frames recording_state",
+            "AUDIO_RESUMED max rms_x10000 after_zeros",
+            "MULTIRES_SHED cost_us short_frames",
+            "STT_START",
+            "STT_UNAVAILABLE",
+            "STT_READY",
+            "STT_BEGIN",
+            "STT_END",
+            "STT_ERROR code",
+            "STT_RESULTS hypotheses",
+            "STT_PARTIAL hypotheses",
+            "STT_RESTART",
+            "APP_EXIT",
+            "MULTIRES_RESTORE cost_us short_frames",
+            "READ_RECOVERED failed_reads",
+    };
+
+    private static final int MAGIC = 0x47435654; // "GCVT"
+    private static final int VERSION = 1;
+    private static final int CAPACITY = 4096;    // records; a power of two
+    private static final int WORDS = 4;          // stamp, time, id|a, b|c
+    private static final long INVALID = -1L;    // stamp of a slot being written
+
+    private static final AtomicLong next = new AtomicLong();
+    private static final AtomicLongArray slots = new AtomicLongArray(CAPACITY * WORDS);
+
+    static {
+        for (int i=0;i<CAPACITY;i++) slots.set(i * WORDS, -2L); // free, never a sequence
+    }
+
+    private EventTrace() {}
+
+    public static void event(int id) { event(id, 0, 0, 0); }
+
+    public static void event(int id, int a) { event(id, a, 0, 0); }
+
+    public static void event(int id, int a, int b) { event(id, a, b, 0); }
+
+    /** Appends a record; safe from any thread, never blocks or allocates. */
+    public static void event(int id, int a, int b, int c) {
+        long time = System.nanoTime();
+        long seq = next.getAndIncrement();
+        int at = (int) (seq & (CAPACITY - 1)) * WORDS;
+        long stamp = slots.get(at);
+        if (stamp == INVALID || !slots.compareAndSet(at, stamp, INVALID)) return;
+        slots.lazySet(at + 1, time);
+        slots.lazySet(at + 2, pack(id, a));
+        slots.lazySet(at + 3, pack(b, c));
+        slots.lazySet(at, seq); // publishes the record
+    }
+
+    /** Records written since start, including ones already overwritten. */
+    public static long getCount() { return next.get(); }
+
+    /**
+     * Writes the records still in the ring, oldest first, to file: a header (magic,
+     * version, record count, System.nanoTime() and System.currentTimeMillis() at the
+     * dump, so times can be placed on the wall clock) followed by 20-byte records
+     * (time, id, a, b, c). Returns the number of records written.
+     */
+    public static int dump(File file) throws IOException {
+        long end = next.get();
+        long start = Math.max(0, end - CAPACITY);
+        long[] copy = new long[(int) (end - start) * 3];
+        int n = 0;
+        for (long seq = start; seq < end; seq++) {
+            int at = (int) (seq & (CAPACITY - 1)) * WORDS;
+            if (slots.get(at) != seq) continue; // not yet published or being overwritten
+            long time = slots.get(at + 1);
+            long ida = slots.get(at + 2);
+            long bc = slots.get(at + 3);
+            if (slots.get(at) != seq) continue;
+            copy[n * 3] = time;
+            copy[n * 3 + 1] = ida;
+            copy[n * 3 + 2] = bc;
+            n++;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeLong(System.nanoTime());
+            out.writeLong(System.currentTimeMillis());
+            for (int i=0;i<n;i++) {
+                out.writeLong(copy[i * 3]);
+                out.writeInt(high(copy[i * 3 + 1]));
+                out.writeInt(low(copy[i * 3 + 1]));
+                out.writeInt(high(copy[i * 3 + 2]));
+                out.writeInt(low(copy[i * 3 + 2]));
+            }
+        } finally {
+            out.close();
+        }
+        return n;
+    }
+
+    /**
+     * Decodes a dump to one line per record: wall-clock time, milliseconds since the
+     * first record, event name and labelled args.
+     */
+    public static void decode(InputStream in, Appendable out) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) throw new IOException("Not an event trace");
+        int version = data.readInt();
+        if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+        int n = data.readInt();
+        long dumpNanos = data.readLong();
+        long dumpMillis = data.readLong();
+        java.text.SimpleDateFormat clock = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", java.util.Locale.US);
+        long first = 0;
+        for (int i=0;i<n;i++) {
+            long time;
+            int id, a, b, c;
+            try {
+                time = data.readLong();
+                id = data.readInt();
+                a = data.readInt();
+                b = data.readInt();
+                c = data.readInt();
+            } catch (EOFException e) {
+                out.append("(truncated after ").append(String.valueOf(i)).append(" records)\n");
+                return;
+            }
+            if (i == 0) first = time;
+            long wall = dumpMillis - (dumpNanos - time) / 1_000_000L;
+            out.append(clock.format(new java.util.Date(wall)))
+                    .append(String.format(java.util.Locale.US, " %+10.1f ms ", (time - first) / 1e6));
+            String name = id > 0 && id < NAMES.length ? NAMES[id] : null;
+            if (name == null) {
+                out.append("EVENT_").append(String.valueOf(id)).append(' ')
+                        .append(a + " " + b + " " + c).append('\n');
+                continue;
+            }
+            String[] words = name.split(" ");
+            out.append(words[0]);
+            int[] args = {a, b, c};
+            for (int k=1;k<words.length && k<=args.length;k++) {
+                out.append(' ').append(words[k]).append('=').append(String.valueOf(args[k - 1]));
+            }
+            out.append('\n');
+        }
+    }
+
+    /** Decoder tool: prints each dump file given on the command line as text. */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: EventTrace <trace.bin>...");
+            System.exit(2);
+        }
+        for (String path : args) {
+            InputStream in = new FileInputStream(path);
+            try {
+                decode(in, System.out);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static long pack(int hi, int lo) { return ((long) hi << 32) | (lo & 0xFFFFFFFFL); }
+
+    private static int high(long v) { return (int) (v >>> 32); }
+
+    private static int low(long v) { return (int) v; }
+}
@@ -0,0 +1,136 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Radix-2 FFT on Q15 integers with block floating-point scaling, for 16-bit PCM.
+ * The input is windowed with a Q15 Hann table and normalised into the upper half of
+ * the range; before each stage the block is shifted down if a butterfly could overflow.
+ * The shared exponent is tracked so {@link #magnitudes(float[])} returns values on the
+ * same scale as {@link FFT} applied to pcm / 32768 * hann.
+ */
+public class FixedFFT {
+    private static final int ONE = 1 << 15;
+    private static final int HEADROOM = 1 << 14; // keep |x| below this entering a stage
+    // Alpha-max-plus-beta-min magnitude: 0.96043 * max + 0.39782 * min (Q15), max error ~4%
+    private static final int MAG_ALPHA = 31471;
+    private static final int MAG_BETA = 13036;
+
+    public final int size;
+    private final int[] rev;
+    private final short[] cos;
+    private final short[] sin;
+    private final short[] window;
+    private final int[] re;
+    private final int[] im;
+    private int exponent = 0;
+
+    public FixedFFT(int n) {
+        int p = 1;
+        while (p < n) p <<= 1;
+        size = p;
+        rev = new int[size];
+        int log = 0; while ((1 << log) < size) log++;
+        for (int i=0;i<size;i++) {
+            rev[i] = Integer.reverse(i) >>> (32 - log);
+        }
+        cos = new short[size/2];
+        sin = new short[size/2];
+        for (int i=0;i<size/2;i++) {
+            double ang = -2*Math.PI*i/size;
+            cos[i] = toQ15(Math.cos(ang));
+            sin[i] = toQ15(Math.sin(ang));
+        }
+        window = new short[size];
+        for (int i=0;i<size;i++) {
+            window[i] = toQ15(0.5 * (1 - Math.cos(2*Math.PI*i/(size-1)))); // Hann
+        }
+        re = new int[size];
+        im = new int[size];
+    }
+
+    private static short toQ15(double v) {
+        long q = Math.round(v * ONE);
+        return (short) Math.max(-ONE, Math.min(ONE - 1, q));
+    }
+
+    /**
+     * Windows the first n samples (zero-padding the rest) and transforms them in place.
+     * Returns the block exponent: true value = stored value * 2^exponent / 32768.
+     */
+    public int transform(short[] pcm, int n) {
+        int N = Math.min(n, size);
+        exponent = 0;
+        // Use the headroom for quiet input so low-level speech keeps its precision: the
+        // shift is taken out of the window product rather than applied after it
+        int peak = 0;
+        for (int i=0;i<N;i++) {
+            int a = pcm[i] < 0 ? -pcm[i] : pcm[i];
+            if (a > peak) peak = a;
+        }
+        for (int i=N;i<size;i++) { re[i] = 0; im[i] = 0; }
+        if (peak == 0) {
+            for (int i=0;i<N;i++) { re[i] = 0; im[i] = 0; }
+            return exponent;
+        }
+        int up = 0;
+        while (up < 15 && (peak << (up + 1)) < HEADROOM) up++;
+        int max = 0;
+        for (int i=0;i<N;i++) {
+            int v = re[i] = (pcm[i] * window[i]) >> (15 - up);
+            im[i] = 0;
+            if (v < 0) v = -v;
+            if (v > max) max = v;
+        }
+        exponent -= up;
+
+        for (int i=0;i<size;i++) {
+            int j = rev[i];
+            if (j < i) {
+                int tr = re[i]; re[i] = re[j]; re[j] = tr;
+            }
+        }
+        // The block shift for each stage is folded into its butterflies, and the
+        // butterflies track the peak that decides the next stage's shift
+        for (int len=2; len<=size; len<<=1) {
+            int down = 0;
+            while ((max >> down) >= HEADROOM) down++;
+            exponent += down;
+            max = 0;
+            int half = len>>1;
+            int step = size/len;
+            for (int i=0; i<size; i+=len) {
+                for (int j=0; j<half; j++) {
+                    int wr = cos[j*step];
+                    int wi = sin[j*step];
+                    int k = i + j + half;
+                    int kr = re[k] >> down, ki = im[k] >> down;
+                    int ar = re[i+j] >> down, ai = im[i+j] >> down;
+                    int xr = (kr*wr - ki*wi) >> 15;
+                    int xi = (kr*wi + ki*wr) >> 15;
+                    int v;
+                    re[k] = v = ar - xr; if (v < 0) v = -v; if (v > max) max = v;
+                    im[k] = v = ai - xi; if (v < 0) v = -v; if (v > max) max = v;
+                    re[i+j] = v = ar + xr; if (v < 0) v = -v; if (v > max) max = v;
+                    im[i+j] = v = ai + xi; if (v < 0) v = -v; if (v > max) max = v;
+                }
+            }
+        }
+        return exponent;
+    }
+
+    /** Integer magnitude of bin k from the last transform, in block-scaled units. */
+    public int magnitude(int k) {
+        int a = re[k] < 0 ? -re[k] : re[k];
+        int b = im[k] < 0 ? -im[k] : im[k];
+        int hi = a > b ? a : b;
+        int lo = a > b ? b : a;
+        return (MAG_ALPHA * hi + MAG_BETA * lo) >> 15;
+    }
+
+    /** Fills out[0..size/2) with magnitudes from the last transform, scaled like {@link FFT}. */
+    public void magnitudes(float[] out) {
+        int bins = Math.min(out.length, size / 2);
+        for (int k=0;k<bins;k++) {
+            out[k] = Math.scalb((float) magnitude(k), exponent - 15);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import java.util.Arrays;
+
+/**
+ * Copy-on-write listener set. Same semantics as CopyOnWriteArrayList, but callers walk
+ * the snapshot array directly, so notifying listeners every frame allocates no iterator.
+ */
+final class ListenerList<T> {
+    private volatile T[] items;
+
+    /** empty fixes the element type of the snapshots. */
+    ListenerList(T[] empty) {
+        items = empty;
+    }
+
+    synchronized void add(T l) {
+        T[] cur = items;
+        T[] next = Arrays.copyOf(cur, cur.length + 1);
+        next[cur.length] = l;
+        items = next;
+    }
+
+    /** Removes the first occurrence of l; returns false if it was not present. */
+    synchronized boolean remove(Object l) {
+        T[] cur = items;
+        for (int i=0;i<cur.length;i++) {
+            if (cur[i] == l || cur[i].equals(l)) {
+                T[] next = Arrays.copyOf(cur, cur.length - 1);
+                System.arraycopy(cur, i + 1, next, i, cur.length - i - 1);
+                items = next;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() { return items.length == 0; }
+
+    /** Current members. Never modified in place, so it can be walked while others add or remove. */
+    T[] snapshot() { return items; }
+}
@@ -0,0 +1,170 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Combines a short FFT (good onset timing) and a long FFT (good harmonic resolution)
+ * into a single spectrogram column. Low bands come from the long frame, high bands
+ * from the short frames, with a linear cross-fade between the two around the crossover.
+ *
+ * Both transforms read from the same sample ring and share one pair of work buffers,
+ * so the only per-mode storage is the window tables and the two magnitude arrays.
+ */
+public class MultiResolutionSpectrum {
+    public final int outBins;
+    private final FFT shortFft;
+    private final FFT longFft;
+    private final double[] shortWindow;
+    private final double[] longWindow;
+    private final double[] re;
+    private final double[] im;
+    private final float[] shortMags;
+    private final float[] longMags;
+    private final float[] out;
+
+    // Ring of the most recent longFft.size normalized samples
+    private final float[] ring;
+    private int ringPos = 0;
+
+    // Scale both transforms to the coherent gain of a refSize-point FFT so the
+    // dB thresholds in SpectrogramView stay valid in either mode
+    private final float shortScale;
+    private final float longScale;
+
+    private int maxShortFrames;
+    private int crossoverLo = 0;
+    private int crossoverHi = 0;
+
+    // Cost accounting (nanoseconds spent in process)
+    private long lastNanos = 0;
+    private long totalNanos = 0;
+    private long frames = 0;
+
+    public MultiResolutionSpectrum(int shortSize, int longSize, int refSize) {
+        shortFft = new FFT(shortSize);
+        longFft = new FFT(longSize);
+        if (shortFft.size >= longFft.size) {
+            throw new IllegalArgumentException("shortSize must be smaller than longSize");
+        }
+        outBins = refSize / 2;
+        shortWindow = hann(shortFft.size);
+        longWindow = hann(longFft.size);
+        re = new double[longFft.size];
+        im = new double[longFft.size];
+        shortMags = new float[shortFft.size / 2];
+        longMags = new float[longFft.size / 2];
+        out = new float[outBins];
+        ring = new float[longFft.size];
+        shortScale = (float) refSize / shortFft.size;
+        longScale = (float) refSize / longFft.size;
+        maxShortFrames = Math.max(1, refSize / shortFft.size);
+    }
+
+    private static double[] hann(int n) {
+        double[] w = new double[n];
+        for (int i=0;i<n;i++) w[i] = 0.5 * (1 - Math.cos(2*Math.PI*i/(n-1)));
+        return w;
+    }
+
+    /** Sets the crossover band (Hz) for the given capture rate. */
+    public void configure(int sampleRate, float crossoverHz, float blendHz) {
+        float binHz = sampleRate / (2f * outBins);
+        crossoverLo = clampBin((int) ((crossoverHz - blendHz / 2f) / binHz));
+        crossoverHi = clampBin((int) ((crossoverHz + blendHz / 2f) / binHz));
+    }
+
+    private int clampBin(int b) {
+        return Math.max(0, Math.min(outBins, b));
+    }
+
+    /** Caps how many short frames are taken per hop, bounding the per-column cost. */
+    public void setMaxShortFrames(int n) {
+        maxShortFrames = Math.max(1, n);
+    }
+
+    public int getMaxShortFrames() { return maxShortFrames; }
+
+    /**
+     * Pushes n new samples and returns the merged column. The returned array is
+     * reused on the next call.
+     */
+    public float[] process(short[] pcm, int n) {
+        long t0 = System.nanoTime();
+
+        for (int i=0;i<n;i++) {
+            ring[ringPos] = pcm[i] / 32768f;
+            ringPos = (ringPos + 1) % ring.length;
+        }
+
+        // Long frame: the whole ring, oldest sample first
+        int L = longFft.size;
+        for (int i=0;i<L;i++) {
+            re[i] = ring[(ringPos + i) % L] * longWindow[i];
+            im[i] = 0;
+        }
+        longFft.fft(re, im);
+        magnitudes(longMags, longScale);
+
+        // Short frames: tile the newest samples of this hop and keep the per-bin max,
+        // so a transient anywhere in the hop shows up in the column
+        int S = shortFft.size;
+        int frameCount = Math.max(1, Math.min(maxShortFrames, n / S));
+        java.util.Arrays.fill(shortMags, 0f);
+        for (int f=0; f<frameCount; f++) {
+            int start = ringPos - (frameCount - f) * S;
+            for (int i=0;i<S;i++) {
+                re[i] = ring[((start + i) % L + L) % L] * shortWindow[i];
+                im[i] = 0;
+            }
+            shortFft.fft(re, im);
+            for (int i=0;i<shortMags.length;i++) {
+                float m = (float) Math.sqrt(re[i]*re[i] + im[i]*im[i]) * shortScale;
+                if (m > shortMags[i]) shortMags[i] = m;
+            }
+        }
+
+        merge();
+
+        lastNanos = System.nanoTime() - t0;
+        totalNanos += lastNanos;
+        frames++;
+        return out;
+    }
+
+    private void magnitudes(float[] dst, float scale) {
+        for (int i=0;i<dst.length;i++) {
+            dst[i] = (float) Math.sqrt(re[i]*re[i] + im[i]*im[i]) * scale;
+        }
+    }
+
+    private void merge() {
+        float longPerOut = (float) longMags.length / outBins;
+        float shortPerOut = (float) shortMags.length / outBins;
+        for (int k=0;k<outBins;k++) {
+            float lo = 0f, hi = 0f;
+            if (k < crossoverHi) {
+                // Long frame is finer than the output grid: take the loudest covered bin
+                int a = (int) (k * longPerOut);
+                int b = Math.max(a + 1, (int) ((k + 1) * longPerOut));
+                for (int j=a; j<b && j<longMags.length; j++) if (longMags[j] > lo) lo = longMags[j];
+            }
+            if (k >= crossoverLo) {
+                // Short frame is coarser: interpolate between neighbouring bins
+                float pos = k * shortPerOut;
+                int j = (int) pos;
+                float u = pos - j;
+                float m0 = shortMags[Math.min(j, shortMags.length - 1)];
+                float m1 = shortMags[Math.min(j + 1, shortMags.length - 1)];
+                hi = m0 + (m1 - m0) * u;
+            }
+            if (k < crossoverLo) out[k] = lo;
+            else if (k >= crossoverHi) out[k] = hi;
+            else {
+                float u = (float) (k - crossoverLo) / (crossoverHi - crossoverLo);
+                out[k] = lo + (hi - lo) * u;
+            }
+        }
+    }
+
+    public long getLastNanos() { return lastNanos; }
+
+    public long getAverageNanos() { return frames == 0 ? 0 : totalNanos / frames; }
+}
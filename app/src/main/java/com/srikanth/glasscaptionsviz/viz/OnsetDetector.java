@@ -0,0 +1,122 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Onset / stress detector on spectrogram magnitudes: half-wave-rectified spectral flux
+ * of log-compressed magnitudes over the speech band, with an adaptive threshold
+ * (median of the recent flux times a factor, plus an offset) and peak picking.
+ * A column whose flux is a local peak above the threshold is reported one column
+ * late, once the peak is confirmed. Its strength is its flux relative to the running
+ * average of recent onsets, so a stressed syllable among ordinary ones scores above 1
+ * whatever the overall level.
+ *
+ * O(bins) per column plus a sort of the short median window; no allocation after
+ * the first column.
+ */
+public class OnsetDetector {
+    private static final float COMPRESSION = 10f;   // log(1 + C*|X|): tames loud partials, keeps level contrast
+    private static final float LOW_HZ = 100f;       // speech band for the flux
+    private static final float HIGH_HZ = 4000f;
+    private static final int MEDIAN_COLUMNS = 15;   // ~0.5 s at 32 ms hops
+    private static final float THRESHOLD_FACTOR = 1.5f;
+    private static final float THRESHOLD_OFFSET = 0.05f; // mean log-flux per bin; keeps noise below
+    private static final long REFRACTORY_NANOS = 150_000_000L;
+    private static final float ONSET_AVERAGE = 0.2f;     // EMA weight of each onset in the strength reference
+
+    private float[] prev = new float[0];
+    private int lo, hi;                     // bin range [lo, hi)
+    private int configuredFor = -1;         // sample rate the bin range was set for
+    private final float[] history = new float[MEDIAN_COLUMNS];
+    private final float[] sorted = new float[MEDIAN_COLUMNS];
+    private int historyCount = 0, historyPos = 0;
+    private float flux1 = 0f, flux2 = 0f;   // flux one and two columns ago
+    private float threshold1 = 0f;          // threshold one column ago
+    private long time1 = 0;                 // timestamp one column ago
+    private long lastOnset = Long.MIN_VALUE / 2;
+    private float onsetMean = 0f;           // average flux of recent onsets, 0 before the first
+
+    private float flux = 0f;
+    private float threshold = 0f;
+    private long onsetTime = 0;
+    private float strength = 0f;
+
+    /**
+     * Feeds one column of linear magnitudes (bins 0..N-1 spanning 0..sampleRate/2)
+     * taken at timeNanos. Returns true if the previous column was an onset; see
+     * {@link #getOnsetTime()} and {@link #getStrength()}.
+     */
+    public boolean process(float[] mags, int sampleRate, long timeNanos) {
+        int N = mags.length;
+        if (prev.length != N || configuredFor != sampleRate) {
+            prev = new float[N];
+            float binHz = sampleRate / 2f / N;
+            lo = Math.max(1, (int) (LOW_HZ / binHz));
+            hi = Math.min(N, (int) Math.ceil(HIGH_HZ / binHz));
+            configuredFor = sampleRate;
+            reset();
+            for (int k=0;k<N;k++) prev[k] = (float) Math.log1p(COMPRESSION * mags[k]);
+            time1 = timeNanos;
+            return false;
+        }
+
+        float sum = 0f;
+        for (int k=lo;k<hi;k++) {
+            float c = (float) Math.log1p(COMPRESSION * mags[k]);
+            float d = c - prev[k];
+            if (d > 0f) sum += d;
+            prev[k] = c;
+        }
+        flux = sum / (hi - lo);
+
+        history[historyPos] = flux;
+        historyPos = (historyPos + 1) % MEDIAN_COLUMNS;
+        if (historyCount < MEDIAN_COLUMNS) historyCount++;
+        threshold = THRESHOLD_FACTOR * median() + THRESHOLD_OFFSET;
+
+        // Peak picking on the previous column: above its threshold and above both neighbours
+        boolean onset = flux1 > threshold1 && flux1 > flux2 && flux1 >= flux
+                && time1 - lastOnset >= REFRACTORY_NANOS;
+        if (onset) {
+            lastOnset = time1;
+            onsetTime = time1;
+            if (onsetMean == 0f) onsetMean = flux1;
+            strength = flux1 / onsetMean;
+            onsetMean += (flux1 - onsetMean) * ONSET_AVERAGE;
+        }
+        flux2 = flux1;
+        flux1 = flux;
+        threshold1 = threshold;
+        time1 = timeNanos;
+        return onset;
+    }
+
+    private float median() {
+        System.arraycopy(history, 0, sorted, 0, historyCount);
+        for (int i=1;i<historyCount;i++) { // insertion sort; the window is tiny
+            float v = sorted[i];
+            int j = i - 1;
+            while (j >= 0 && sorted[j] > v) { sorted[j + 1] = sorted[j]; j--; }
+            sorted[j + 1] = v;
+        }
+        return sorted[historyCount / 2];
+    }
+
+    /** Timestamp of the most recent onset (the column it peaked in). */
+    public long getOnsetTime() { return onsetTime; }
+
+    /** Flux of the most recent onset relative to the average of the ones before it. */
+    public float getStrength() { return strength; }
+
+    /** Flux of the latest column, mean log-magnitude rise per bin. */
+    public float getFlux() { return flux; }
+
+    /** Threshold for the latest column. */
+    public float getThreshold() { return threshold; }
+
+    public void reset() {
+        historyCount = 0;
+        historyPos = 0;
+        flux1 = flux2 = threshold1 = 0f;
+        lastOnset = Long.MIN_VALUE / 2;
+        onsetMean = 0f;
+    }
+}
@@ -0,0 +1,69 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Lock-free single-producer/single-consumer ring of 16-bit PCM. The capture thread
+ * offers whole blocks and the DSP thread polls whole blocks; neither ever waits on
+ * the other. A block that does not fit is dropped and counted rather than
+ * overwriting samples the consumer may be reading.
+ *
+ * Positions are absolute sample counts, so occupancy is head - tail and no slot is
+ * wasted telling full from empty.
+ */
+public class PcmRing {
+    private final short[] buf;
+    private final int mask;
+    private volatile long head = 0;     // samples written; producer only
+    private volatile long tail = 0;     // samples consumed; consumer only
+    private volatile long dropped = 0;  // producer only
+    private volatile int peak = 0;      // highest occupancy seen; producer only
+
+    /** Capacity is minCapacity rounded up to a power of two. */
+    public PcmRing(int minCapacity) {
+        int cap = Integer.highestOneBit(Math.max(2, minCapacity) - 1) << 1;
+        buf = new short[cap];
+        mask = cap - 1;
+    }
+
+    /** Producer: appends src[0..n) and returns true, or counts it as dropped if there is no room. */
+    public boolean offer(short[] src, int n) {
+        long h = head;
+        int fill = (int) (h - tail);
+        if (fill + n > buf.length) {
+            dropped += n;
+            return false;
+        }
+        int at = (int) (h & mask);
+        int first = Math.min(n, buf.length - at);
+        System.arraycopy(src, 0, buf, at, first);
+        System.arraycopy(src, first, buf, 0, n - first);
+        head = h + n; // publishes the samples
+        if (fill + n > peak) peak = fill + n;
+        return true;
+    }
+
+    /** Consumer: removes n samples into dst and returns true, or returns false if fewer are queued. */
+    public boolean poll(short[] dst, int n) {
+        long t = tail;
+        if (head - t < n) return false;
+        int at = (int) (t & mask);
+        int first = Math.min(n, buf.length - at);
+        System.arraycopy(buf, at, dst, 0, first);
+        System.arraycopy(buf, 0, dst, first, n - first);
+        tail = t + n; // frees the slots
+        return true;
+    }
+
+    /** Samples currently queued. */
+    public int available() { return (int) (head - tail); }
+
+    public int capacity() { return buf.length; }
+
+    /** Samples accepted since creation. */
+    public long getWritten() { return head; }
+
+    /** Samples the producer had to drop because the consumer fell behind. */
+    public long getDroppedSamples() { return dropped; }
+
+    /** Highest occupancy seen, in samples. */
+    public int getPeak() { return peak; }
+}
@@ -0,0 +1,130 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * F0 estimator using the normalized square difference function (McLeod pitch method).
+ * The autocorrelation is computed with the existing FFT: zero-padded frame, power
+ * spectrum, then a second forward transform (the spectrum is real and symmetric, so
+ * that equals the inverse up to scale). All buffers are preallocated.
+ */
+public class PitchTracker {
+    private static final float PEAK_RATIO = 0.9f;   // first key maximum within 90% of the best wins
+    private static final float SILENCE_RMS = 0.003f; // ~ -50 dBFS, below this report unvoiced
+
+    public final int frameSize;
+    private final FFT fft;
+    private final double[] re;
+    private final double[] im;
+    private final float[] x;
+    private final float[] nsdf;
+
+    private float minHz = 70f;
+    private float maxHz = 500f;
+
+    private float f0 = 0f;
+    private float confidence = 0f;
+    private long lastNanos = 0;
+
+    public PitchTracker(int frameSize) {
+        this.frameSize = frameSize;
+        fft = new FFT(frameSize * 2); // pad so the correlation is linear, not circular
+        re = new double[fft.size];
+        im = new double[fft.size];
+        x = new float[frameSize];
+        nsdf = new float[frameSize];
+    }
+
+    public void setRange(float minHz, float maxHz) {
+        this.minHz = minHz;
+        this.maxHz = maxHz;
+    }
+
+    /**
+     * Estimates F0 for the first n samples of pcm. Returns true if the frame is voiced;
+     * the estimate is then available from {@link #getF0()} and {@link #getConfidence()}.
+     */
+    public boolean process(short[] pcm, int n, int sampleRate) {
+        long t0 = System.nanoTime();
+        int N = Math.min(n, frameSize);
+        f0 = 0f;
+        confidence = 0f;
+
+        double energy = 0;
+        for (int i=0;i<N;i++) {
+            float v = pcm[i] / 32768f;
+            x[i] = v;
+            re[i] = v;
+            energy += v * v;
+        }
+        for (int i=N;i<re.length;i++) re[i] = 0;
+        java.util.Arrays.fill(im, 0);
+
+        if (N < 2 || Math.sqrt(energy / N) < SILENCE_RMS) {
+            lastNanos = System.nanoTime() - t0;
+            return false;
+        }
+
+        // Autocorrelation r(tau) = FFT(|FFT(x)|^2) / size
+        fft.fft(re, im);
+        for (int k=0;k<re.length;k++) {
+            re[k] = re[k]*re[k] + im[k]*im[k];
+            im[k] = 0;
+        }
+        fft.fft(re, im);
+        double scale = 1.0 / fft.size;
+
+        // m(tau) = sum x[j]^2 + x[j+tau]^2, updated incrementally
+        int tauMin = Math.max(1, (int) (sampleRate / maxHz));
+        int tauMax = Math.min(N * 2 / 3, (int) (sampleRate / minHz) + 1);
+        double m = 2 * energy;
+        nsdf[0] = 1f;
+        for (int tau=1; tau<=tauMax && tau<N; tau++) {
+            m -= x[tau-1]*x[tau-1] + x[N-tau]*x[N-tau];
+            nsdf[tau] = m > 1e-12 ? (float) (2 * re[tau] * scale / m) : 0f;
+        }
+
+        // Key maxima: the highest point between each positive-going and negative-going zero crossing
+        float best = 0f;
+        int tau = 1;
+        while (tau < tauMax && nsdf[tau] > 0) tau++; // skip the zero-lag lobe
+        int pass = 0;
+        int chosen = -1;
+        while (pass < 2 && chosen < 0) {
+            int t = tau;
+            while (t < tauMax) {
+                while (t < tauMax && nsdf[t] <= 0) t++;
+                int peak = -1;
+                float peakVal = 0f;
+                while (t < tauMax && nsdf[t] > 0) {
+                    if (nsdf[t] > peakVal && t >= tauMin) { peakVal = nsdf[t]; peak = t; }
+                    t++;
+                }
+                if (peak < 0) continue;
+                if (pass == 0) {
+                    if (peakVal > best) best = peakVal;
+                } else if (peakVal >= PEAK_RATIO * best) {
+                    chosen = peak;
+                    break;
+                }
+            }
+            if (best <= 0f) break;
+            pass++;
+        }
+
+        if (chosen > 0) {
+            // Parabolic interpolation around the chosen lag
+            float a = nsdf[chosen - 1], b = nsdf[chosen], c = chosen + 1 < N ? nsdf[chosen + 1] : b;
+            float denom = a - 2*b + c;
+            float shift = denom != 0f ? 0.5f * (a - c) / denom : 0f;
+            f0 = sampleRate / (chosen + shift);
+            confidence = Math.max(0f, Math.min(1f, b - 0.25f * (a - c) * shift));
+        }
+        lastNanos = System.nanoTime() - t0;
+        return f0 > 0f;
+    }
+
+    public float getF0() { return f0; }
+
+    public float getConfidence() { return confidence; }
+
+    public long getLastNanos() { return lastNanos; }
+}
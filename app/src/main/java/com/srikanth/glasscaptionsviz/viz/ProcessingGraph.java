@@ -0,0 +1,213 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Pull-based DSP graph run once per captured frame. Each {@link Stage} names the
+ * stages it reads from; {@link Tap}s bind consumers to a stage. Per frame, only the
+ * stages reachable from an active tap are computed, each at most once, so an
+ * intermediate shared by several consumers (e.g. the FFT under both the spectrogram
+ * and an onset detector) is computed for the first and reused by the rest, and a
+ * stage nobody needs costs nothing.
+ *
+ * Taps can be attached and detached from any thread while capture runs; stages are
+ * only ever computed on the engine's DSP thread.
+ *
+ * A stage belongs to the first graph a tap binds it (or a stage that reads it) to, and
+ * attaching it to another graph throws: its per-frame cache is keyed on that graph's
+ * frame index, and stateful stages assume one stream of frames.
+ */
+public class ProcessingGraph {
+
+    /** The captured block a pass runs over. Stages read it, never modify it. */
+    public static final class Frame {
+        public long index = -1;
+        public short[] pcm;
+        public int length;
+        public long timeNanos;   // System.nanoTime() at which the block's last sample was captured
+        public int sampleRate;
+        private AllocationCounter counter; // set by process() while allocations are being counted
+    }
+
+    /** The calling thread's cumulative allocated bytes, from whatever the platform offers. */
+    public interface AllocationCounter { long threadAllocatedBytes(); }
+
+    /**
+     * A step of the graph. Computed at most once per frame index, so it must only ever
+     * see one graph's frames; {@link ProcessingGraph#attach} enforces that.
+     */
+    public abstract static class Stage {
+        private final String name;
+        private ProcessingGraph owner; // set on first attach, under Stage.class
+        private final Stage[] inputs;
+        private Stage[] pulledInCompute = new Stage[0];
+        private long computedFor = -1;
+        private volatile long nanos = 0;
+        private long allocated = 0;
+
+        protected Stage(String name, Stage... inputs) {
+            this.name = name;
+            this.inputs = inputs;
+        }
+
+        /**
+         * Declares stages that compute() pulls itself (e.g. whichever path is selected),
+         * so allocation resets and reports reach them. Nulls are ignored.
+         */
+        protected final void alsoPulls(Stage... stages) {
+            List<Stage> l = new ArrayList<Stage>();
+            for (Stage s : stages) if (s != null) l.add(s);
+            pulledInCompute = l.toArray(new Stage[0]);
+        }
+
+        /** Computes this stage's result for f; inputs have already been pulled. */
+        protected abstract void compute(Frame f);
+
+        /** Makes sure this stage (and its inputs) are up to date for f. */
+        public final void pull(Frame f) {
+            if (computedFor == f.index) return;
+            for (Stage s : inputs) s.pull(f);
+            AllocationCounter ac = f.counter;
+            long a0 = ac != null ? ac.threadAllocatedBytes() : 0;
+            long t0 = System.nanoTime();
+            compute(f);
+            long dt = System.nanoTime() - t0;
+            nanos = nanos == 0 ? dt : nanos + (dt - nanos) / 16;
+            if (ac != null) allocated += ac.threadAllocatedBytes() - a0;
+            computedFor = f.index;
+        }
+
+        /** True if the stage was computed for the frame with this index. */
+        public final boolean isCurrent(long frameIndex) {
+            return computedFor == frameIndex;
+        }
+
+        /** Smoothed cost of compute() alone in ns, excluding inputs (0 until it has run). */
+        public final long getNanos() { return nanos; }
+
+        public final String getName() { return name; }
+    }
+
+    /** A consumer of one stage. Inactive taps do not pull their stage. */
+    public abstract static class Tap {
+        public boolean isActive() { return true; }
+
+        /** Called on the DSP thread after the bound stage is current for f. */
+        public abstract void onFrame(Frame f);
+    }
+
+    private static final class Binding {
+        final Stage stage; // null for taps that only read the raw frame
+        final Tap tap;
+        long allocated;
+        Binding(Stage stage, Tap tap) { this.stage = stage; this.tap = tap; }
+    }
+
+    private volatile AllocationCounter allocationCounter;
+
+    // Copy-on-write array rather than a list so the per-frame walk allocates no iterator
+    private volatile Binding[] bindings = new Binding[0];
+
+    /**
+     * Binds tap to stage (or to the raw frame if stage is null). Taps run in attach order.
+     * @throws IllegalStateException if stage, or a stage under it, belongs to another graph
+     */
+    public synchronized void attach(Stage stage, Tap tap) {
+        Iterable<Stage> under = stagesUnder(stage, new IdentityHashMap<Stage, Boolean>());
+        synchronized (Stage.class) {
+            for (Stage s : under) {
+                if (s.owner != null && s.owner != this) {
+                    throw new IllegalStateException("stage " + s.name + " already belongs to another graph");
+                }
+            }
+            for (Stage s : under) s.owner = this;
+        }
+        Binding[] next = Arrays.copyOf(bindings, bindings.length + 1);
+        next[bindings.length] = new Binding(stage, tap);
+        bindings = next;
+    }
+
+    public synchronized void detach(Tap tap) {
+        Binding[] cur = bindings;
+        Binding[] next = new Binding[cur.length];
+        int n = 0;
+        for (Binding b : cur) if (b.tap != tap) next[n++] = b;
+        bindings = Arrays.copyOf(next, n);
+    }
+
+    public void process(Frame f) {
+        AllocationCounter ac = allocationCounter;
+        f.counter = ac;
+        Binding[] cur = bindings;
+        for (int i = 0; i < cur.length; i++) {
+            Binding b = cur[i];
+            if (!b.tap.isActive()) continue;
+            if (b.stage != null) b.stage.pull(f);
+            long a0 = ac != null ? ac.threadAllocatedBytes() : 0;
+            b.tap.onFrame(f);
+            if (ac != null) b.allocated += ac.threadAllocatedBytes() - a0;
+        }
+    }
+
+    /**
+     * While set, every stage's compute() and every tap's onFrame() adds what it
+     * allocated to its own total. Inputs are counted separately; stages a compute()
+     * pulls itself are counted both on their own and in it. Set and
+     * cleared from the processing thread.
+     */
+    public void setAllocationCounter(AllocationCounter counter) {
+        allocationCounter = counter;
+    }
+
+    /** Zeroes all allocation totals. Call from the processing thread. */
+    public void resetAllocationCounts() {
+        for (Binding b : bindings) {
+            b.allocated = 0;
+            for (Stage s : stagesUnder(b.stage, new IdentityHashMap<Stage, Boolean>())) s.allocated = 0;
+        }
+    }
+
+    /**
+     * One line per stage or tap whose allocation since the last reset, averaged over
+     * frames, exceeds budgetPerFrame bytes; empty if everything is within budget.
+     * Taps are named by position and the stage they read. Call from the processing thread.
+     */
+    public String allocationReport(long frames, long budgetPerFrame) {
+        StringBuilder sb = new StringBuilder();
+        IdentityHashMap<Stage, Boolean> seen = new IdentityHashMap<Stage, Boolean>();
+        Binding[] cur = bindings;
+        for (int i = 0; i < cur.length; i++) {
+            Binding b = cur[i];
+            for (Stage s : stagesUnder(b.stage, seen)) {
+                if (s.allocated > budgetPerFrame * frames) {
+                    sb.append("stage ").append(s.name).append(": ").append(s.allocated / frames)
+                            .append(" B/frame (").append(s.allocated).append(" B total)\n");
+                }
+            }
+            if (b.allocated > budgetPerFrame * frames) {
+                sb.append("tap ").append(i).append(" on ").append(b.stage != null ? b.stage.name : "frame")
+                        .append(": ").append(b.allocated / frames).append(" B/frame (").append(b.allocated)
+                        .append(" B total)\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    // Adds s and its inputs not already in seen; returns the newly added ones
+    private static Iterable<Stage> stagesUnder(Stage s, IdentityHashMap<Stage, Boolean> seen) {
+        List<Stage> added = new ArrayList<Stage>();
+        collect(s, seen, added);
+        return added;
+    }
+
+    private static void collect(Stage s, IdentityHashMap<Stage, Boolean> seen, List<Stage> added) {
+        if (s == null || seen.containsKey(s)) return;
+        seen.put(s, Boolean.TRUE);
+        added.add(s);
+        for (Stage in : s.inputs) collect(in, seen, added);
+        for (Stage in : s.pulledInCompute) collect(in, seen, added);
+    }
+}
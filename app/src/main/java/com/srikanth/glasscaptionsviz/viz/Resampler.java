@@ -0,0 +1,111 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Streaming rational resampler (polyphase FIR), e.g. 44.1 kHz -> 16 kHz as L/M = 160/441.
+ * The prototype is a Kaiser-windowed sinc whose stopband (about 60 dB) starts at half
+ * the lower of the two rates, so nothing that would alias is let through; the
+ * transition band is 12.5% of that rate below it, so 44.1 kHz input keeps speech flat
+ * up to 6 kHz at 16 kHz output. Each output costs one dot product of taps()
+ * multiply-adds; state carries across calls and process() allocates nothing.
+ */
+public class Resampler {
+    private static final double BETA = 5.65;           // Kaiser beta for ~60 dB stopband
+    private static final double TRANSITION = 0.125;   // transition width / lower rate
+    private static final double TAP_FACTOR = 29.0;    // taps per phase per unit fin/min(fin, fout), Kaiser's estimate
+
+    public final int inRate;
+    public final int outRate;
+    private final int L, M;      // up, down factors
+    private final int T;         // taps per phase
+    private final float[] poly;  // L phases of T taps, each reversed so the dot product runs oldest->newest
+    private final float[] hist;  // last T inputs, stored twice so the window never wraps
+    private int w = 0;           // next write slot in hist
+    private int phase = 0;       // position of the next output after the newest input, in 1/L input samples
+
+    public Resampler(int inRate, int outRate) {
+        this.inRate = inRate;
+        this.outRate = outRate;
+        int g = gcd(inRate, outRate);
+        L = outRate / g;
+        M = inRate / g;
+        int lower = Math.min(inRate, outRate);
+        int t = (int) Math.ceil(TAP_FACTOR * inRate / lower);
+        T = Math.max(16, (t + 1) & ~1);
+        hist = new float[2 * T];
+
+        // Prototype at the upsampled rate L*inRate, cutoff mid-transition so the stopband
+        // begins at lower/2
+        int K = L * T;
+        double fc = (0.5 - TRANSITION / 2) * lower / ((double) L * inRate); // cycles per upsampled sample
+        double mid = (K - 1) / 2.0;
+        double i0Beta = besselI0(BETA);
+        double[] h = new double[K];
+        double sum = 0;
+        for (int k=0;k<K;k++) {
+            double x = k - mid;
+            double sinc = x == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * x) / (Math.PI * x);
+            double r = x / mid;
+            double win = besselI0(BETA * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+            h[k] = sinc * win;
+            sum += h[k];
+        }
+        poly = new float[K];
+        for (int p=0;p<L;p++) {
+            for (int i=0;i<T;i++) {
+                poly[p * T + i] = (float) (h[p + (T - 1 - i) * L] * L / sum); // unity gain per phase
+            }
+        }
+    }
+
+    /** Taps per output sample. */
+    public int taps() { return T; }
+
+    /** Upper bound on outputs from n inputs, for sizing the output buffer. */
+    public int maxOutput(int n) {
+        return (int) ((long) n * L / M) + 2;
+    }
+
+    /** Filters in[0..n) into out from index 0 and returns how many samples were written. */
+    public int process(short[] in, int n, short[] out) {
+        int produced = 0;
+        for (int s=0;s<n;s++) {
+            float x = in[s];
+            hist[w] = x;
+            hist[w + T] = x;
+            w = w + 1 == T ? 0 : w + 1;
+            while (phase < L) {
+                int c = phase * T;
+                float acc = 0f;
+                for (int i=0;i<T;i++) acc += poly[c + i] * hist[w + i];
+                int v = Math.round(acc);
+                out[produced++] = (short) (v > 32767 ? 32767 : (v < -32768 ? -32768 : v));
+                phase += M;
+            }
+            phase -= L;
+        }
+        return produced;
+    }
+
+    /** Clears the filter history, e.g. after a gap in the input. */
+    public void reset() {
+        java.util.Arrays.fill(hist, 0f);
+        w = 0;
+        phase = 0;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) { int t = a % b; a = b; b = t; }
+        return a;
+    }
+
+    // Zeroth-order modified Bessel function of the first kind, by its power series
+    private static double besselI0(double x) {
+        double sum = 1, term = 1, q = x * x / 4;
+        for (int k=1;k<50;k++) {
+            term *= q / (k * k);
+            sum += term;
+            if (term < 1e-12 * sum) break;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,163 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Long spectrogram history stored as 8-bit dB indices in one preallocated byte ring,
+ * plus a 2x/4x/8x max-pooled pyramid for zoomed-out views. 4096 columns of 256 bins
+ * (about 131 s at the 16 kHz DSP rate's 31.25 columns/s, whatever the capture rate)
+ * take under 2 MB including the pyramid.
+ *
+ * Written from the audio thread, read from the render thread without locking: a
+ * column is fully written before the written-count is published, and readers stay
+ * a few columns clear of the slot being overwritten.
+ */
+public class SpectrogramHistory implements AudioEngine.SpectrogramSink {
+    public static final int DEFAULT_COLUMNS = 4096;
+    public static final int DEFAULT_BINS = 256;
+    public static final int LEVELS = 4;          // 1x, 2x, 4x, 8x
+    public static final float MIN_DB = -80f;     // index 0
+    public static final float MAX_DB = 0f;       // index 255
+    private static final int GUARD_COLUMNS = 4;  // distance kept from the write head when reading
+
+    public final int bins;
+    public final int capacity;
+    private final byte[][] rings;       // per level: (capacity >> level) columns * bins
+    private final int[] levelCapacity;
+    private final long[] written;       // columns written per level; only level 0 is read cross-thread
+    private volatile long published = 0;
+    private volatile int sourceBins = 0; // length of the columns being appended
+    private int[] rowLut = new int[0]; // reader-side scratch: output row -> bin
+    private float[] dbScratch = new float[0]; // writer-side scratch for append(mags)
+
+    public SpectrogramHistory(int capacity, int bins) {
+        this.capacity = capacity;
+        this.bins = bins;
+        rings = new byte[LEVELS][];
+        levelCapacity = new int[LEVELS];
+        written = new long[LEVELS];
+        for (int l=0;l<LEVELS;l++) {
+            levelCapacity[l] = Math.max(2, capacity >> l);
+            rings[l] = new byte[levelCapacity[l] * bins];
+        }
+    }
+
+    /** Bytes held by the ring and pyramid. */
+    public int memoryBytes() {
+        int total = 0;
+        for (byte[] r : rings) total += r.length;
+        return total;
+    }
+
+    /** Bins per appended column before pooling (0 until the first append). */
+    public int getSourceBins() { return sourceBins; }
+
+    /** Total level-0 columns appended since creation. */
+    public long getColumnsWritten() { return published; }
+
+    @Override
+    public void onSpectrogramColumn(float[] mags) {
+        append(mags);
+    }
+
+    /** Quantizes one column of magnitudes (max-pooled to {@link #bins}) and updates the pyramid. */
+    public void append(float[] mags) {
+        if (mags == null || mags.length == 0) return;
+        if (dbScratch.length != mags.length) dbScratch = new float[mags.length];
+        for (int i=0;i<mags.length;i++) dbScratch[i] = 20f * (float) Math.log10(Math.max(mags[i], 1e-12f));
+        appendDb(dbScratch, mags.length);
+    }
+
+    /** Same as {@link #append(float[])} for a column already in dB (e.g. after normalisation). */
+    public void appendDb(float[] db, int N) {
+        if (db == null || N == 0) return;
+        byte[] ring = rings[0];
+        int base = (int) (written[0] % levelCapacity[0]) * bins;
+        sourceBins = N;
+        for (int b=0;b<bins;b++) {
+            int from = (int) ((long) b * N / bins);
+            int to = Math.max(from + 1, (int) ((long) (b + 1) * N / bins));
+            float m = -Float.MAX_VALUE;
+            for (int i=from;i<to && i<N;i++) if (db[i] > m) m = db[i];
+            ring[base + b] = (byte) quantize(m);
+        }
+        written[0]++;
+
+        // Every second column at level l-1 completes one column at level l
+        for (int l=1;l<LEVELS && (written[l-1] & 1) == 0;l++) {
+            byte[] src = rings[l-1];
+            int capPrev = levelCapacity[l-1];
+            int a = (int) ((written[l-1] - 2) % capPrev) * bins;
+            int b2 = (int) ((written[l-1] - 1) % capPrev) * bins;
+            byte[] dst = rings[l];
+            int d = (int) (written[l] % levelCapacity[l]) * bins;
+            for (int b=0;b<bins;b++) {
+                int x = src[a + b] & 0xFF, y = src[b2 + b] & 0xFF;
+                dst[d + b] = (byte) (x > y ? x : y);
+            }
+            written[l]++;
+        }
+        published = written[0];
+    }
+
+    static int quantize(float dB) {
+        int q = Math.round((dB - MIN_DB) * 255f / (MAX_DB - MIN_DB));
+        return q < 0 ? 0 : (q > 255 ? 255 : q);
+    }
+
+    /** dB value represented by index q. */
+    public static float dequantize(int q) {
+        return MIN_DB + q * (MAX_DB - MIN_DB) / 255f;
+    }
+
+    /** Oldest level-0 column a reader may request right now. */
+    public long oldestReadable() {
+        return Math.max(0, published - capacity + GUARD_COLUMNS * (1 << (LEVELS - 1)));
+    }
+
+    /**
+     * Renders the window of level-0 columns ending just before endColumn, zoom columns per
+     * output pixel, into out (outW x outH at offset, stride), newest at the right, bin 0
+     * at the bottom and bin visibleBins-1 at the top. The pyramid level closest to zoom
+     * is used, so the cost is O(outW * outH) whatever the zoom or position; past 8x,
+     * columns of the top level are sampled rather than pooled. Columns that are not
+     * available are filled with lut[0]. Must be called from a single reader thread.
+     */
+    public void render(long endColumn, int zoom, int visibleBins, int[] lut,
+                       int[] out, int offset, int stride, int outW, int outH) {
+        render(endColumn, zoom, visibleBins, lut, out, offset, stride, outW, outH, 0, outH);
+    }
+
+    /**
+     * Renders only rows [firstRow, firstRow + rowCount) of the same outW x outH image,
+     * row firstRow landing at out[offset], so a caller can render in bands.
+     */
+    public void render(long endColumn, int zoom, int visibleBins, int[] lut,
+                       int[] out, int offset, int stride, int outW, int outH, int firstRow, int rowCount) {
+        zoom = Math.max(1, zoom);
+        int level = 0;
+        while (level < LEVELS - 1 && (2 << level) <= zoom) level++;
+        int perPixel = Math.max(1, zoom >> level); // level columns per output pixel (1 unless zoom > 8)
+
+        long pub = published;
+        long oldest = oldestReadable();
+        endColumn = Math.min(endColumn, pub);
+
+        if (rowLut.length != outH) rowLut = new int[outH];
+        visibleBins = Math.max(1, Math.min(bins, visibleBins));
+        for (int y=0;y<outH;y++) rowLut[y] = (int) ((long) (outH - 1 - y) * visibleBins / outH);
+
+        byte[] ring = rings[level];
+        int cap = levelCapacity[level];
+        long levelWritten = pub >> level;
+        long levelEnd = endColumn >> level;
+        long levelOldest = (oldest + (1L << level) - 1) >> level;
+        int blank = lut[0];
+        for (int x=0;x<outW;x++) {
+            long col = levelEnd - (long) (outW - x) * perPixel;
+            boolean valid = col >= levelOldest && col < levelWritten && col >= 0;
+            int base = valid ? (int) (col % cap) * bins : 0;
+            for (int y=firstRow;y<firstRow+rowCount;y++) {
+                out[offset + (y - firstRow) * stride + x] = valid ? lut[ring[base + rowLut[y]] & 0xFF] : blank;
+            }
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Pure-Java rasterizer for the spectrogram screen: the column ring, the loudness meter
+ * and the per-utterance waveform overlay. The column ring holds 8-bit palette indices
+ * plus a one-byte pitch tint per column. There is no full-size framebuffer:
+ * {@link #compose(PixelSink)} expands only the changed region through the palette, a
+ * band of rows at a time into a small ARGB strip, and hands each band to the caller,
+ * which for {@link SpectrogramView} and {@link SpectrogramSurfaceView} is their bitmap.
+ * No android.* dependencies, so it can be profiled and pixel-tested on a plain JVM.
+ *
+ * Columns, pitch and loudness arrive on the audio thread while compose runs on the
+ * UI or render thread, so all state changes are synchronized on the renderer.
+ */
+public class SpectrogramRenderer {
+    public static final int BACKGROUND = 0xFF000000;
+    private static final int METER_BG = 0xFF222222;
+    private static final int PEAK_COLOR = 0xFFFF0000;
+    private static final int WAVEFORM_COLOR = 0xFF222222;
+
+    private static final int LOUDNESS_METER_WIDTH = 15; // Much smaller - auto-adjusts based on screen
+    private static final long PEAK_HOLD_TIME = 1000; // ms
+    private static final int METER_MARGIN = 20;
+
+    // dB scaling for columns
+    private static final float EPS = 1e-12f;
+    private static final float MIN_DB = -60f, MAX_DB = -5f;
+    private static final float GATE_DB = -22f;  // below this, draw black
+    // Lowest palette position drawn: the gate, or the near-silence floor if that is higher
+    private static final float T_FLOOR = Math.max(0.06f, (GATE_DB - MIN_DB) / (MAX_DB - MIN_DB));
+    private static final int[] PALETTE = buildPalette(); // index -> untinted colour, 0 = BACKGROUND
+
+    private static final float PITCH_MIN_HZ = 80f;
+    private static final float PITCH_MAX_HZ = 400f;
+    private static final float PITCH_MIN_CONFIDENCE = 0.5f;
+    private static final float PITCH_TINT_STRENGTH = 0.45f;
+    private static final int TINT_HUES = 63;    // pitch steps; with TINT_LEVELS keeps keys in a byte
+    private static final int TINT_LEVELS = 4;   // confidence steps
+
+    private static final int STRIP_ROWS = 16;   // strip holds this many full-width rows
+
+    /** Receives composed pixels; same contract as Bitmap.setPixels. */
+    public interface PixelSink {
+        void setPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height);
+    }
+
+    // Source column ring of palette indices, row-major, row 0 = highest frequency
+    private int cols = 256;
+    private int rows = 128;
+    private byte[] pixels;
+    private byte[] columnTint; // 0 = untinted, else 1 + hue * TINT_LEVELS + level
+    private int writeCol = 0;
+    private final int[][] tintLuts = new int[1 + TINT_HUES * TINT_LEVELS][]; // built on first use
+
+    // Output layout
+    private int width;
+    private int height;
+    private int spectrogramWidth;
+    private int meterX;
+    private int meterWidth;
+    private int[] strip;     // compose scratch: one band of the region being composed
+    private int[] srcColOfX; // output x -> source column
+    private int[] srcRowOfY; // output y -> source row
+    private int[] xStartOfCol; // source column -> first output x (cols + 1 entries)
+    private int[][] lutOfX;    // compose scratch: output x -> palette of its column
+
+    // Dirty state since the last compose
+    private int dirtyColStart = 0;
+    private int dirtyColCount = 0;
+    private boolean spectrogramDirty = true;
+    private boolean meterDirty = true;
+
+    // Loudness meter
+    private float currentLoudness = 0f;
+    private float peakLoudness = 0f;
+    private long peakTime = 0;
+
+    // Waveform persistence: per output x, the vertical span the stroke covers
+    private float[] persistentWaveform;
+    private boolean showPersistentWaveform = false;
+    private int[] waveTop;
+    private int[] waveBottom;
+
+    // History (rewind / zoom): when historyMode is set the spectrogram area shows the
+    // stored window ending at historyEnd instead of the live ring
+    private SpectrogramHistory history;
+    private int[] historyLut;
+    private boolean historyMode = false;
+    private long historyEnd = 0;
+    private int historyZoom = 1;
+
+    // Per-bin noise floor + AGC applied to each column before colour mapping
+    private final SpectrumNormalizer normalizer = new SpectrumNormalizer(GATE_DB, MAX_DB);
+    private boolean adaptive = true;
+    private float[] columnDb = new float[0];
+
+    // Pitch tint
+    private boolean pitchTint = true;
+    private float pitchHz = 0f;
+    private float pitchConfidence = 0f;
+
+    /** Lays out the frame for a w x h surface and clears all history. */
+    public synchronized void resize(int w, int h) {
+        width = Math.max(1, w);
+        height = Math.max(1, h);
+        // Auto-adjust loudness meter width based on screen size
+        meterWidth = Math.max(1, Math.min(LOUDNESS_METER_WIDTH + width/100, width/20));
+        // Reserve space for loudness meter
+        spectrogramWidth = Math.max(1, width - meterWidth - 10);
+        meterX = spectrogramWidth + 5;
+        cols = Math.max(64, Math.min(spectrogramWidth, 1024));
+        rows = Math.max(64, Math.min(height, 512));
+
+        pixels = new byte[cols * rows];
+        columnTint = new byte[cols];
+        writeCol = 0;
+        strip = new int[width * STRIP_ROWS];
+
+        srcColOfX = new int[spectrogramWidth];
+        for (int x=0;x<spectrogramWidth;x++) srcColOfX[x] = (int) ((long) x * cols / spectrogramWidth);
+        srcRowOfY = new int[height];
+        for (int y=0;y<height;y++) srcRowOfY[y] = (int) ((long) y * rows / height);
+        xStartOfCol = new int[cols + 1];
+        for (int c=0;c<=cols;c++) xStartOfCol[c] = (int) (((long) c * spectrogramWidth + cols - 1) / cols);
+        lutOfX = new int[spectrogramWidth][];
+
+        persistentWaveform = new float[cols];
+        showPersistentWaveform = false;
+        waveTop = new int[spectrogramWidth];
+        waveBottom = new int[spectrogramWidth];
+        spectrogramDirty = true;
+        meterDirty = true;
+    }
+
+    public synchronized void writeColumn(float[] mags) {
+        if (pixels == null || mags == null || mags.length == 0) return;
+
+        // Clear column: TRUE BLACK (not dark gray)
+        for (int r = 0; r < rows; r++) pixels[r * cols + writeCol] = 0;
+
+        // Tint for this column: low F0 -> blue, high F0 -> red, weighted by confidence
+        int tintKey = 0;
+        if (pitchTint && pitchHz > 0f && pitchConfidence >= PITCH_MIN_CONFIDENCE) {
+            float p = (float) (Math.log(pitchHz / PITCH_MIN_HZ) / Math.log(PITCH_MAX_HZ / PITCH_MIN_HZ));
+            int hue = Math.round(Math.max(0f, Math.min(1f, p)) * (TINT_HUES - 1));
+            float c = (pitchConfidence - PITCH_MIN_CONFIDENCE) / (1f - PITCH_MIN_CONFIDENCE);
+            int level = Math.round(Math.min(1f, c) * (TINT_LEVELS - 1));
+            tintKey = 1 + hue * TINT_LEVELS + level;
+        }
+
+        // One log per source bin, shared by the normaliser, the history and the colours
+        int N = mags.length;
+        if (columnDb.length != N) columnDb = new float[N];
+        for (int i = 0; i < N; i++) columnDb[i] = 20f * (float)Math.log10(Math.max(mags[i], EPS));
+        if (adaptive) normalizer.process(columnDb, N);
+
+        for (int bi = 0; bi < rows && bi < N; bi++) {
+            pixels[(rows - 1 - bi) * cols + writeCol] = (byte) paletteIndex(columnDb[bi]);
+        }
+        columnTint[writeCol] = (byte) tintKey;
+
+        if (history != null) history.appendDb(columnDb, N);
+
+        if (historyMode) {
+            // Frozen on a past window; the live ring keeps filling underneath
+            writeCol = (writeCol + 1) % cols;
+            return;
+        }
+        if (dirtyColCount == 0) dirtyColStart = writeCol;
+        dirtyColCount = Math.min(cols, dirtyColCount + 1);
+        writeCol = (writeCol + 1) % cols;
+    }
+
+    /** Colour for a bin at dB, or BACKGROUND if it is gated out. */
+    static int dbColor(float dB) {
+        if (dB < GATE_DB) return BACKGROUND;
+        float t = (dB - MIN_DB) / (MAX_DB - MIN_DB); // 0..1
+        t = Math.max(0f, Math.min(1f, t));
+        // Small floor to avoid purple haze at near-silence
+        if (t < 0.06f) return BACKGROUND;
+        return vibrantPalette(t);
+    }
+
+    /** Palette index for a bin at dB; 0 (BACKGROUND) exactly where {@link #dbColor} gates. */
+    static int paletteIndex(float dB) {
+        if (dB < GATE_DB) return 0;
+        float t = (dB - MIN_DB) / (MAX_DB - MIN_DB);
+        if (t < 0.06f) return 0;
+        t = Math.min(1f, t);
+        return 1 + Math.round((t - T_FLOOR) * 254f / (1f - T_FLOOR));
+    }
+
+    private static int[] buildPalette() {
+        int[] p = new int[256];
+        p[0] = BACKGROUND;
+        for (int i=1;i<256;i++) p[i] = vibrantPalette(T_FLOOR + (i - 1) * (1f - T_FLOOR) / 254f);
+        return p;
+    }
+
+    // Colours for a column's indices: the shared palette, or the tinted copy for its key
+    private int[] paletteFor(int tintKey) {
+        if (tintKey == 0) return PALETTE;
+        int[] lut = tintLuts[tintKey];
+        if (lut == null) {
+            int hue = (tintKey - 1) / TINT_LEVELS, level = (tintKey - 1) % TINT_LEVELS;
+            int tint = pitchPalette(hue / (float) (TINT_HUES - 1));
+            float confidence = PITCH_MIN_CONFIDENCE + level * (1f - PITCH_MIN_CONFIDENCE) / (TINT_LEVELS - 1);
+            float amount = PITCH_TINT_STRENGTH * confidence;
+            lut = new int[256];
+            lut[0] = BACKGROUND;
+            for (int i=1;i<256;i++) lut[i] = interpolateColor(PALETTE[i], tint, amount);
+            tintLuts[tintKey] = lut;
+        }
+        return lut;
+    }
+
+    /**
+     * Bytes held for the current size: the column ring, the tint palettes built so far,
+     * the compose strip and the per-row and per-column tables. The caller's bitmap and
+     * an attached history store are not included.
+     */
+    public synchronized int memoryBytes() {
+        if (pixels == null) return 0;
+        int luts = 0;
+        for (int[] l : tintLuts) if (l != null) luts += l.length * 4;
+        int tables = 4 * (srcColOfX.length + srcRowOfY.length + xStartOfCol.length + lutOfX.length
+                + persistentWaveform.length + waveTop.length + waveBottom.length);
+        return pixels.length + columnTint.length + luts + strip.length * 4 + tables;
+    }
+
+    /** Attaches a history store; every column written from now on is also appended to it. */
+    public synchronized void setHistory(SpectrogramHistory h) {
+        history = h;
+        if (h != null && historyLut == null) {
+            historyLut = new int[256];
+            for (int q=0;q<256;q++) historyLut[q] = dbColor(SpectrogramHistory.dequantize(q));
+        }
+    }
+
+    /**
+     * Shows the stored window ending columnsBack columns before now, zoom columns per
+     * source column (1, 2, 4, 8...). No-op without a history store.
+     */
+    public synchronized void showHistory(long columnsBack, int zoom) {
+        if (history == null) return;
+        historyMode = true;
+        historyEnd = Math.max(0, history.getColumnsWritten() - Math.max(0, columnsBack));
+        historyZoom = Math.max(1, zoom);
+        spectrogramDirty = true;
+    }
+
+    public synchronized void showLive() {
+        if (!historyMode) return;
+        historyMode = false;
+        spectrogramDirty = true;
+    }
+
+    public synchronized boolean isShowingHistory() { return historyMode; }
+
+    public synchronized void setPitch(float f0, float confidence) {
+        pitchHz = f0;
+        pitchConfidence = confidence;
+    }
+
+    /** Adaptive noise floor + AGC (default on); off restores the fixed dB mapping. */
+    public synchronized void setAdaptiveLevels(boolean enabled) {
+        if (enabled && !adaptive) normalizer.reset();
+        adaptive = enabled;
+    }
+
+    public synchronized void setPitchTint(boolean enabled) {
+        pitchTint = enabled;
+    }
+
+    public synchronized void setLoudness(float loudnessLinear, long nowMs) {
+        // Convert linear RMS [0..1] to dBFS
+        final float eps = 1e-6f;
+        float db = 20f * (float)Math.log10(Math.max(loudnessLinear, eps)); // [-inf..0]
+        // Map [-60..0] dB -> [0..1]
+        float norm = (db + 60f) / 60f;
+        currentLoudness = Math.max(0f, Math.min(1f, norm));
+
+        if (currentLoudness > peakLoudness) {
+            peakLoudness = currentLoudness;
+            peakTime = nowMs;
+        } else if (nowMs - peakTime > PEAK_HOLD_TIME) {
+            peakLoudness *= 0.95f;
+        }
+        meterDirty = true;
+    }
+
+    public synchronized void setWaveform(float[] waveformData) {
+        if (persistentWaveform == null || waveformData == null) return;
+        int len = Math.min(persistentWaveform.length, waveformData.length);
+        System.arraycopy(waveformData, 0, persistentWaveform, 0, len);
+        showPersistentWaveform = true;
+        traceWaveform();
+        spectrogramDirty = true;
+    }
+
+    public synchronized void clearWaveform() {
+        showPersistentWaveform = false;
+        spectrogramDirty = true;
+    }
+
+    // Rasterize the 2 px polyline into per-x vertical spans
+    private void traceWaveform() {
+        java.util.Arrays.fill(waveTop, Integer.MAX_VALUE);
+        java.util.Arrays.fill(waveBottom, Integer.MIN_VALUE);
+        int len = persistentWaveform.length;
+        int centerY = height / 2;
+        int maxAmplitude = height / 4;
+        for (int i = 1; i < len && i < spectrogramWidth; i++) {
+            int xa = (i - 1) * spectrogramWidth / len;
+            int xb = Math.min(spectrogramWidth - 1, i * spectrogramWidth / len);
+            float y1 = centerY + persistentWaveform[i - 1] * maxAmplitude;
+            float y2 = centerY + persistentWaveform[i] * maxAmplitude;
+            int top = Math.round(Math.min(y1, y2)) - 1;
+            int bottom = Math.round(Math.max(y1, y2)) + 1;
+            for (int x = xa; x <= xb; x++) {
+                if (top < waveTop[x]) waveTop[x] = top;
+                if (bottom > waveBottom[x]) waveBottom[x] = bottom;
+            }
+        }
+    }
+
+    /**
+     * Composes everything that changed since the last call and passes it to sink as
+     * rectangles no larger than the strip; pixels outside them are unchanged, and the
+     * gaps beside the meter are never written. The strip is reused for the next
+     * rectangle, so sink must copy it before returning. Returns false if nothing changed.
+     */
+    public synchronized boolean compose(PixelSink sink) {
+        if (pixels == null) return false;
+        boolean changed = false;
+
+        if (spectrogramDirty || dirtyColCount >= cols) {
+            composeSpectrogram(0, spectrogramWidth, sink);
+            changed = true;
+        } else if (dirtyColCount > 0) {
+            int end = dirtyColStart + dirtyColCount; // exclusive, may wrap past cols
+            if (end <= cols) {
+                composeSpectrogram(xStartOfCol[dirtyColStart], xStartOfCol[end], sink);
+            } else {
+                composeSpectrogram(xStartOfCol[dirtyColStart], spectrogramWidth, sink);
+                composeSpectrogram(0, xStartOfCol[end - cols], sink);
+            }
+            changed = true;
+        }
+        spectrogramDirty = false;
+        dirtyColCount = 0;
+
+        if (meterDirty) {
+            composeMeter(sink);
+            meterDirty = false;
+            changed = true;
+        }
+        return changed;
+    }
+
+    // Rows per band for a region w pixels wide: as many as the strip holds
+    private int bandRows(int w) {
+        return Math.max(1, Math.min(height, strip.length / w));
+    }
+
+    private void composeSpectrogram(int x0, int x1, PixelSink sink) {
+        int w = x1 - x0;
+        if (w <= 0) return;
+        int band = bandRows(w);
+        if (historyMode) {
+            // Whole area at once: cost scales with the output size, not the history length
+            // Same frequency span as the live view, which shows the lowest `rows` source bins
+            int source = Math.max(1, history.getSourceBins());
+            int visible = (int) Math.min(history.bins, (long) rows * history.bins / source);
+            for (int y0=0;y0<height;y0+=band) {
+                int h = Math.min(band, height - y0);
+                history.render(historyEnd, historyZoom, visible, historyLut, strip, 0, w, w, height, y0, h);
+                if (showPersistentWaveform) overlayWaveform(x0, x1, y0, h);
+                sink.setPixels(strip, 0, w, x0, y0, w, h);
+            }
+            return;
+        }
+        for (int x=x0;x<x1;x++) lutOfX[x] = paletteFor(columnTint[srcColOfX[x]] & 0xFF);
+        boolean wave = showPersistentWaveform;
+        for (int y0=0;y0<height;y0+=band) {
+            int h = Math.min(band, height - y0);
+            for (int y=y0;y<y0+h;y++) {
+                int srcRow = srcRowOfY[y] * cols;
+                int out = (y - y0) * w - x0;
+                for (int x=x0;x<x1;x++) {
+                    strip[out + x] = (wave && y >= waveTop[x] && y <= waveBottom[x])
+                            ? WAVEFORM_COLOR : lutOfX[x][pixels[srcRow + srcColOfX[x]] & 0xFF];
+                }
+            }
+            sink.setPixels(strip, 0, w, x0, y0, w, h);
+        }
+    }
+
+    // Draws the waveform over rows [y0, y0+h) of the strip holding x0..x1
+    private void overlayWaveform(int x0, int x1, int y0, int h) {
+        int w = x1 - x0;
+        for (int x=x0;x<x1;x++) {
+            int top = Math.max(y0, waveTop[x]), bottom = Math.min(y0 + h - 1, waveBottom[x]);
+            for (int y=top;y<=bottom;y++) strip[(y - y0) * w + x - x0] = WAVEFORM_COLOR;
+        }
+    }
+
+    private void composeMeter(PixelSink sink) {
+        int x = meterX;
+        int x1 = Math.min(width, meterX + meterWidth);
+        int meterHeight = height - 2 * METER_MARGIN; // Leave margin top/bottom
+        int meterY = METER_MARGIN;
+
+        int levelColor = 0;
+        int levelTop = Integer.MAX_VALUE;
+        if (currentLoudness > 0) {
+            levelTop = Math.round(meterY + meterHeight - currentLoudness * meterHeight);
+            // Color based on level
+            if (currentLoudness < 0.5f) {
+                levelColor = interpolateColor(0xFF00FF00, 0xFFFFFF00, currentLoudness * 2f);
+            } else {
+                levelColor = interpolateColor(0xFFFFFF00, 0xFFFF0000, (currentLoudness - 0.5f) * 2f);
+            }
+        }
+        int peakY = peakLoudness > 0 ? Math.round(meterY + meterHeight - peakLoudness * meterHeight) : Integer.MIN_VALUE;
+
+        int w = x1 - x;
+        if (w <= 0) return;
+        int band = bandRows(w);
+        for (int y0=0;y0<height;y0+=band) {
+            int h = Math.min(band, height - y0);
+            for (int y=y0;y<y0+h;y++) {
+                int out = (y - y0) * w - x;
+                boolean inMeter = y >= meterY && y < meterY + meterHeight;
+                for (int px=x; px<x1; px++) {
+                    int c = BACKGROUND;
+                    if (inMeter) {
+                        boolean inner = px > x && px < x1 - 1;
+                        if (inner && y >= peakY - 1 && y <= peakY + 1) c = PEAK_COLOR;
+                        else if (inner && y >= levelTop && y < meterY + meterHeight - 1) c = levelColor;
+                        else c = METER_BG;
+                    }
+                    strip[out + px] = c;
+                }
+            }
+            sink.setPixels(strip, 0, w, x, y0, w, h);
+        }
+    }
+
+    // Enhanced color palette for vibrant visualization like your image
+    static int vibrantPalette(float t) {
+        float r, g, b;
+
+        if (t < 0.2f) { // Deep blue/purple
+            float u = t / 0.2f;
+            r = 0.2f * u;
+            g = 0f;
+            b = 0.8f + 0.2f * u;
+        } else if (t < 0.4f) { // Blue to cyan
+            float u = (t - 0.2f) / 0.2f;
+            r = 0.2f + 0.3f * u;
+            g = 0.6f * u;
+            b = 1f;
+        } else if (t < 0.6f) { // Cyan to green
+            float u = (t - 0.4f) / 0.2f;
+            r = 0.5f - 0.5f * u;
+            g = 0.6f + 0.4f * u;
+            b = 1f - 0.5f * u;
+        } else if (t < 0.8f) { // Green to yellow
+            float u = (t - 0.6f) / 0.2f;
+            r = 0f + u;
+            g = 1f;
+            b = 0.5f - 0.5f * u;
+        } else { // Yellow to white/red
+            float u = (t - 0.8f) / 0.2f;
+            r = 1f;
+            g = 1f - 0.3f * u;
+            b = u * 0.8f;
+        }
+
+        int R = (int)(r * 255f);
+        int G = (int)(g * 255f);
+        int B = (int)(b * 255f);
+        return 0xFF000000 | (R << 16) | (G << 8) | B;
+    }
+
+    // Pitch hue ramp (blue -> cyan -> green -> orange -> red)
+    static int pitchPalette(float p) {
+        if (p < 0.25f) return interpolateColor(0xFF2060FF, 0xFF00E0FF, p / 0.25f);
+        if (p < 0.5f) return interpolateColor(0xFF00E0FF, 0xFF30FF60, (p - 0.25f) / 0.25f);
+        if (p < 0.75f) return interpolateColor(0xFF30FF60, 0xFFFF9000, (p - 0.5f) / 0.25f);
+        return interpolateColor(0xFFFF9000, 0xFFFF2020, (p - 0.75f) / 0.25f);
+    }
+
+    static int interpolateColor(int color1, int color2, float ratio) {
+        ratio = Math.max(0f, Math.min(1f, ratio));
+
+        int r1 = (color1 >> 16) & 0xFF;
+        int g1 = (color1 >> 8) & 0xFF;
+        int b1 = color1 & 0xFF;
+
+        int r2 = (color2 >> 16) & 0xFF;
+        int g2 = (color2 >> 8) & 0xFF;
+        int b2 = color2 & 0xFF;
+
+        int r = (int)(r1 + (r2 - r1) * ratio);
+        int g = (int)(g1 + (g2 - g1) * ratio);
+        int b = (int)(b1 + (b2 - b1) * ratio);
+
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public int getMeterX() { return meterX; }
+
+    public int getMeterWidth() { return meterWidth; }
+
+    public int getColumns() { return cols; }
+
+    public int getRows() { return rows; }
+
+    public float getCurrentLoudness() { return currentLoudness; }
+}
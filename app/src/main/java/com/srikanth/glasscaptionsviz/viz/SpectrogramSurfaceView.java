@@ -0,0 +1,190 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * SurfaceView variant of {@link SpectrogramView}. Composition and posting run on a
+ * dedicated render thread, so neither the audio thread nor the UI thread pays for
+ * drawing. Updates are coalesced: however many columns arrive between frames, the
+ * render thread composes once.
+ */
+public class SpectrogramSurfaceView extends SurfaceView implements SurfaceHolder.Callback,
+        AudioEngine.SpectrogramSink, AudioEngine.LoudnessListener, AudioEngine.PitchListener {
+    private static final String TAG = "SpectrogramSurface";
+    private final SpectrogramRenderer renderer = new SpectrogramRenderer();
+    private final SpectrogramHistory history = new SpectrogramHistory(SpectrogramHistory.DEFAULT_COLUMNS,
+            SpectrogramHistory.DEFAULT_BINS);
+    private final Object lock = new Object();
+    private final Paint textPaint = new Paint();
+    private volatile SurfaceHolder holder; // set on the UI thread, read by the render thread
+    private Thread renderThread;
+    private boolean running = false;     // guarded by lock
+    private boolean frameRequested = false; // guarded by lock
+    private Bitmap frameBmp;             // render thread only
+
+    public SpectrogramSurfaceView(Context c) {
+        super(c);
+        init();
+    }
+
+    public SpectrogramSurfaceView(Context c, AttributeSet a) {
+        super(c, a);
+        init();
+    }
+
+    private void init() {
+        renderer.setHistory(history);
+        textPaint.setColor(0xFFFFFFFF);
+        textPaint.setTextSize(8f);
+        textPaint.setAntiAlias(true);
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder h) {
+        Log.d(TAG, "surfaceCreated");
+        holder = h;
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder h, int format, int w, int ht) {
+        Log.d(TAG, "surfaceChanged " + w + "x" + ht);
+        stopRenderThread();
+        renderer.resize(w, ht);
+        synchronized (lock) {
+            running = true;
+            frameRequested = true;
+        }
+        renderThread = new Thread(new Runnable() {
+            @Override public void run() { renderLoop(); }
+        }, "SpectrogramRender");
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder h) {
+        Log.d(TAG, "surfaceDestroyed");
+        stopRenderThread();
+        holder = null;
+    }
+
+    private void stopRenderThread() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        if (renderThread != null) {
+            try { renderThread.join(500); } catch (InterruptedException ignore) {}
+            renderThread = null;
+        }
+    }
+
+    private void requestFrame() {
+        synchronized (lock) {
+            if (frameRequested) return;
+            frameRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void renderLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+        frameBmp = SpectrogramView.createFrameBitmap(renderer);
+        SpectrogramView.BitmapSink sink = new SpectrogramView.BitmapSink();
+        sink.bitmap = frameBmp;
+        try {
+            while (true) {
+                synchronized (lock) {
+                    while (running && !frameRequested) {
+                        try { lock.wait(); } catch (InterruptedException e) { return; }
+                    }
+                    if (!running) break;
+                    frameRequested = false;
+                }
+                renderer.compose(sink);
+                SurfaceHolder h = holder;
+                if (h == null) continue;
+                Canvas canvas = null;
+                try {
+                    canvas = h.lockCanvas();
+                    if (canvas == null) continue;
+                    canvas.drawColor(SpectrogramRenderer.BACKGROUND);
+                    canvas.drawBitmap(frameBmp, 0, 0, null);
+                    SpectrogramView.drawMeterLabels(canvas, renderer, textPaint);
+                } catch (Throwable t) {
+                    Log.e(TAG, "render error", t);
+                } finally {
+                    if (canvas != null) {
+                        try { h.unlockCanvasAndPost(canvas); } catch (Exception ignore) {}
+                    }
+                }
+            }
+        } finally {
+            // Every exit, including an interrupt, frees the frame bitmap
+            frameBmp.recycle();
+            frameBmp = null;
+        }
+    }
+
+    @Override
+    public void onSpectrogramColumn(float[] mags) {
+        renderer.writeColumn(mags);
+        requestFrame();
+    }
+
+    @Override
+    public void onLoudnessUpdate(float loudnessLinear) {
+        renderer.setLoudness(loudnessLinear, System.currentTimeMillis());
+        requestFrame();
+    }
+
+    @Override
+    public void onPitch(long timestampNanos, float f0, float confidence) {
+        renderer.setPitch(f0, confidence);
+    }
+
+    public void setPitchTint(boolean enabled) {
+        renderer.setPitchTint(enabled);
+    }
+
+    public void setAdaptiveLevels(boolean enabled) {
+        renderer.setAdaptiveLevels(enabled);
+    }
+
+    public void showWaveformForSentence(float[] waveformData) {
+        renderer.setWaveform(waveformData);
+        requestFrame();
+    }
+
+    public void clearWaveform() {
+        renderer.clearWaveform();
+        requestFrame();
+    }
+
+    /** Freezes the display on the window ending columnsBack columns ago, zoom columns per pixel. */
+    public void rewind(long columnsBack, int zoom) {
+        renderer.showHistory(columnsBack, zoom);
+        requestFrame();
+    }
+
+    public void showLive() {
+        renderer.showLive();
+        requestFrame();
+    }
+
+    public SpectrogramHistory getHistory() {
+        return history;
+    }
+
+    public float getCurrentLoudness() {
+        return renderer.getCurrentLoudness();
+    }
+}
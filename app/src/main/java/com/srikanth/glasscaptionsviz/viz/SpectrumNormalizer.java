@@ -0,0 +1,81 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+/**
+ * Per-bin adaptive noise floor plus display AGC, in the dB domain.
+ *
+ * Each bin's floor is a slow percentile tracker: it steps up when the bin is louder
+ * than the floor and down (by a third as much) when quieter, settling at the 75th
+ * percentile of that bin's level. Steady room noise therefore sits at or below the
+ * floor, while speech, which occupies any one bin far less than a quarter of the
+ * time, stays above it. The AGC tracks the column's peak level above
+ * the floor with fast attack and slow release. Each column is then remapped so that
+ * FLOOR_MARGIN above the floor lands on the display gate and the AGC peak lands on the
+ * display maximum; the view's fixed dB-to-colour mapping stays as it is.
+ *
+ * O(bins) per column, no allocation after the first column of a given size.
+ */
+public class SpectrumNormalizer {
+    private static final float FLOOR_UP_DB = 0.15f;    // 3x the down step -> 75th percentile
+    private static final float FLOOR_DOWN_DB = 0.05f;  // per column (~1.6 dB/s at 31.25 columns/s)
+    private static final float FLOOR_MARGIN_DB = 6f;   // level above the floor that reaches the gate
+    private static final float AGC_ATTACK = 0.5f;
+    private static final float AGC_RELEASE = 0.01f;
+    private static final float AGC_MIN_DB = 20f;       // never stretch less than this above the margin
+    private static final float AGC_MAX_DB = 70f;
+
+    private final float gateDb;
+    private final float maxDb;
+    private float[] floor = new float[0];
+    private boolean primed = false;
+    private float agcDb = 30f; // peak level above floor
+
+    /** gateDb and maxDb are the display's fixed gate and full-scale levels. */
+    public SpectrumNormalizer(float gateDb, float maxDb) {
+        this.gateDb = gateDb;
+        this.maxDb = maxDb;
+    }
+
+    /** Updates the trackers with db[0..n) and rewrites it in place with display levels. */
+    public void process(float[] db, int n) {
+        if (floor.length != n) {
+            floor = new float[n];
+            primed = false;
+        }
+        if (!primed) {
+            System.arraycopy(db, 0, floor, 0, n);
+            primed = true;
+        }
+
+        float peak = 0f;
+        for (int k=0;k<n;k++) {
+            float d = db[k];
+            float f = floor[k];
+            f += d > f ? FLOOR_UP_DB : -FLOOR_DOWN_DB;
+            floor[k] = f;
+            float snr = d - f;
+            if (snr > peak) peak = snr;
+        }
+
+        float rate = peak > agcDb ? AGC_ATTACK : AGC_RELEASE;
+        agcDb += (peak - agcDb) * rate;
+        agcDb = Math.max(AGC_MIN_DB + FLOOR_MARGIN_DB, Math.min(AGC_MAX_DB, agcDb));
+
+        float scale = (maxDb - gateDb) / (agcDb - FLOOR_MARGIN_DB);
+        for (int k=0;k<n;k++) {
+            db[k] = gateDb + (db[k] - floor[k] - FLOOR_MARGIN_DB) * scale;
+        }
+    }
+
+    /** Current floor estimate for bin k in input dB, for diagnostics. */
+    public float getFloorDb(int k) {
+        return k < floor.length ? floor[k] : Float.NaN;
+    }
+
+    /** Current AGC peak level above the floor, in dB. */
+    public float getAgcDb() { return agcDb; }
+
+    public void reset() {
+        primed = false;
+        agcDb = 30f;
+    }
+}
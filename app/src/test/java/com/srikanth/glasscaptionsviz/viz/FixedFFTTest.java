@@ -0,0 +1,99 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FixedFFT against the double-precision FFT on the same Hann-windowed block. The
+ * error is the worst bin's absolute difference relative to the spectrum's peak, which
+ * is what the display sees once columns are normalised. It should be the
+ * alpha-max-plus-beta-min magnitude's (~4%) at every level: quiet input is shifted up
+ * inside the window product, so it does not lose bits before the butterflies.
+ */
+public class FixedFFTTest {
+    private static final int N = 1024;
+
+    @Test
+    public void matchesFloatFftAcrossLevels() {
+        // 0.001 of full scale is about 33 LSB peak
+        double[] levels = {0.9, 0.3, 0.1, 0.03, 0.01, 0.003, 0.001};
+        for (double amp : levels) {
+            for (long seed=1;seed<=3;seed++) {
+                double err = worstBinError(speechLike(amp, seed));
+                assertTrue("amp " + amp + ": " + pct(err), err <= 0.045);
+            }
+        }
+    }
+
+    @Test
+    public void singleToneLandsInTheSameBinAtTheSameScale() {
+        short[] pcm = new short[N];
+        for (int i=0;i<N;i++) pcm[i] = (short) Math.round(8000 * Math.sin(2 * Math.PI * 64.0 * i / N));
+        float[] fixed = fixedMags(pcm);
+        float[] ref = floatMags(pcm);
+        assertEquals(64, argMax(fixed));
+        assertEquals(ref[64], fixed[64], ref[64] * 0.05);
+    }
+
+    @Test
+    public void silenceIsAllZero() {
+        float[] fixed = fixedMags(new short[N]);
+        for (float m : fixed) assertEquals(0f, m, 0f);
+    }
+
+    private static double worstBinError(short[] pcm) {
+        float[] fixed = fixedMags(pcm);
+        float[] ref = floatMags(pcm);
+        double peak = 0, worst = 0;
+        for (float m : ref) peak = Math.max(peak, m);
+        for (int k=0;k<ref.length;k++) worst = Math.max(worst, Math.abs(fixed[k] - ref[k]));
+        return worst / peak;
+    }
+
+    private static float[] fixedMags(short[] pcm) {
+        FixedFFT fft = new FixedFFT(N);
+        float[] mags = new float[N / 2];
+        fft.transform(pcm, pcm.length);
+        fft.magnitudes(mags);
+        return mags;
+    }
+
+    // What the window/fft/magnitude stages compute
+    private static float[] floatMags(short[] pcm) {
+        FFT fft = new FFT(N);
+        double[] re = new double[N];
+        double[] im = new double[N];
+        for (int i=0;i<N;i++) re[i] = pcm[i] / 32768.0 * 0.5 * (1 - Math.cos(2 * Math.PI * i / (N - 1)));
+        fft.fft(re, im);
+        float[] mags = new float[N / 2];
+        for (int k=0;k<mags.length;k++) mags[k] = (float) Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+        return mags;
+    }
+
+    // Harmonics of a 150 Hz voice (at 16 kHz) over a little white noise, peak near amp
+    private static short[] speechLike(double amp, long seed) {
+        Random rnd = new Random(seed);
+        short[] pcm = new short[N];
+        for (int i=0;i<N;i++) {
+            double v = 0;
+            for (int h=1;h<=10;h++) v += Math.sin(2 * Math.PI * 150.0 * h * i / 16000 + h) / h;
+            v = v / 2.0 + 0.02 * rnd.nextGaussian();
+            pcm[i] = (short) Math.max(-32768, Math.min(32767, Math.round(v * amp * 32767)));
+        }
+        return pcm;
+    }
+
+    private static int argMax(float[] v) {
+        int best = 0;
+        for (int i=1;i<v.length;i++) if (v[i] > v[best]) best = i;
+        return best;
+    }
+
+    private static String pct(double e) {
+        return String.format(java.util.Locale.US, "%.1f%% of peak", e * 100);
+    }
+}
@@ -0,0 +1,153 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * OnsetDetector on synthetic 16 kHz signals, fed the same columns the engine gives it:
+ * 1024-point Hann FFT magnitudes every 512-sample hop.
+ */
+public class OnsetDetectorTest {
+    private static final int RATE = 16000;
+    private static final int N = 1024;
+    private static final int HOP = 512;
+    private static final double HOP_SECONDS = HOP / (double) RATE;
+
+    private interface Signal { double at(int i, Random rnd); }
+
+    private static final class Onset {
+        final double seconds;
+        final float strength;
+        Onset(double seconds, float strength) { this.seconds = seconds; this.strength = strength; }
+    }
+
+    @Test
+    public void backgroundNoiseHasNoOnsets() {
+        List<Onset> onsets = run(5, new Signal() {
+            @Override public double at(int i, Random rnd) { return 0.003 * rnd.nextGaussian(); }
+        });
+        assertEquals(describe(onsets), 0, onsets.size());
+    }
+
+    @Test
+    public void steadyToneHasNoOnsetsAfterItStarts() {
+        List<Onset> onsets = run(5, new Signal() {
+            @Override public double at(int i, Random rnd) {
+                return (i >= RATE ? 0.3 * Math.sin(2 * Math.PI * 440 * i / RATE) : 0) + 0.01 * rnd.nextGaussian();
+            }
+        });
+        assertTrue(describe(onsets), onsets.size() <= 1);
+        for (Onset o : onsets) assertEquals(describe(onsets), 1.0, o.seconds, 2 * HOP_SECONDS);
+    }
+
+    @Test
+    public void slowCrescendoIsNotAnOnset() {
+        List<Onset> onsets = run(5, new Signal() {
+            @Override public double at(int i, Random rnd) {
+                return i / (5.0 * RATE) * 0.5 * voice(i, 150) + 0.003 * rnd.nextGaussian();
+            }
+        });
+        assertEquals(describe(onsets), 0, onsets.size());
+    }
+
+    @Test
+    public void toneBurstsAreFoundWhereTheyStart() {
+        // A 150 ms voiced burst every 0.5 s from 0.5 s on: 5 ms attack, 50 ms release.
+        // A gate that closes abruptly splatters between the harmonics, which the log
+        // compression turns into flux; no voice stops that fast.
+        List<Onset> onsets = run(5, new Signal() {
+            @Override public double at(int i, Random rnd) {
+                double t = i / (double) RATE;
+                double phase = t % 0.5;
+                double env = t < 0.5 || phase >= 0.15 ? 0 : Math.min(1, Math.min(phase / 0.005, (0.15 - phase) / 0.05));
+                return 0.3 * env * voice(i, 140) + 0.003 * rnd.nextGaussian();
+            }
+        });
+        assertEquals(describe(onsets), 9, onsets.size());
+        for (int k=0;k<onsets.size();k++) {
+            assertEquals(describe(onsets), 0.5 * (k + 1), onsets.get(k).seconds, 2 * HOP_SECONDS);
+        }
+    }
+
+    @Test
+    public void stressedSyllablesScoreAboveTheOthers() {
+        // Four syllables a second; the first of each group of four is four times louder.
+        // MainActivity treats strength >= 1.25 (STRESS_RATIO) as stress.
+        List<Onset> onsets = run(5, new Signal() {
+            @Override public double at(int i, Random rnd) {
+                double t = i / (double) RATE;
+                int syllable = (int) (t * 4);
+                double phase = t * 4 - syllable;
+                double env = phase < 0.6 ? Math.sin(Math.PI * phase / 0.6) : 0;
+                double amp = syllable % 4 == 0 ? 0.4 : 0.1;
+                return amp * env * voice(i, 120 + 10 * (syllable % 3)) + 0.003 * rnd.nextGaussian();
+            }
+        });
+        int stressed = 0;
+        for (Onset o : onsets) {
+            // Syllable onsets are 0.25 s apart; which one is this?
+            int syllable = (int) Math.round(o.seconds * 4);
+            boolean isStressed = syllable % 4 == 0;
+            if (syllable < 4) continue; // the strength reference is still settling
+            if (isStressed) {
+                stressed++;
+                assertTrue(describe(onsets), o.strength > 1.25f);
+            } else {
+                assertTrue(describe(onsets), o.strength < 1.15f);
+            }
+        }
+        assertEquals(describe(onsets), 4, stressed);
+    }
+
+    // Ten harmonics of f0 at 1/h, peak about 1
+    private static double voice(int i, double f0) {
+        double v = 0;
+        for (int h=1;h<=10;h++) v += Math.sin(2 * Math.PI * f0 * h * i / RATE) / h;
+        return v / 3;
+    }
+
+    private static List<Onset> run(double seconds, Signal signal) {
+        OnsetDetector detector = new OnsetDetector();
+        FFT fft = new FFT(N);
+        double[] window = new double[N];
+        for (int i=0;i<N;i++) window[i] = 0.5 * (1 - Math.cos(2 * Math.PI * i / (N - 1)));
+        double[] re = new double[N];
+        double[] im = new double[N];
+        float[] mags = new float[N / 2];
+        Random rnd = new Random(7);
+        int total = (int) (seconds * RATE);
+        short[] pcm = new short[total];
+        for (int i=0;i<total;i++) {
+            pcm[i] = (short) Math.max(-32768, Math.min(32767, Math.round(signal.at(i, rnd) * 32767)));
+        }
+
+        List<Onset> onsets = new ArrayList<Onset>();
+        // Each column covers the last N samples up to the end of the hop, as in the engine
+        for (int end = HOP; end <= total; end += HOP) {
+            for (int i=0;i<N;i++) {
+                int j = end - N + i;
+                re[i] = j >= 0 ? pcm[j] / 32768.0 * window[i] : 0;
+                im[i] = 0;
+            }
+            fft.fft(re, im);
+            for (int k=0;k<mags.length;k++) mags[k] = (float) Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+            long nanos = end * 1_000_000_000L / RATE;
+            if (detector.process(mags, RATE, nanos)) {
+                onsets.add(new Onset(detector.getOnsetTime() / 1e9, detector.getStrength()));
+            }
+        }
+        return onsets;
+    }
+
+    private static String describe(List<Onset> onsets) {
+        StringBuilder sb = new StringBuilder("onsets:");
+        for (Onset o : onsets) sb.append(String.format(java.util.Locale.US, " %.3fs(x%.2f)", o.seconds, o.strength));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PitchTracker on synthetic voices across the speaking range, at the engine's frame
+ * size and rate: a 1024-sample block at 16 kHz, as the pitch stage gets it.
+ */
+public class PitchTrackerTest {
+    private static final int RATE = 16000;
+    private static final int N = 1024;
+    private static final float[] F0S = {85f, 100f, 123.4f, 150f, 180f, 220f, 261.6f, 300f, 350f, 400f, 440f};
+
+    @Test
+    public void pureTonesAcrossTheRange() {
+        PitchTracker tracker = new PitchTracker(N);
+        for (float f0 : F0S) {
+            assertTrue(f0 + " Hz voiced", tracker.process(tone(f0, 1, 0.3, 0, 0), N, RATE));
+            assertEquals(f0 + " Hz", f0, tracker.getF0(), 0.05f);
+            assertTrue(f0 + " Hz confidence " + tracker.getConfidence(), tracker.getConfidence() > 0.9f);
+        }
+    }
+
+    @Test
+    public void harmonicVoicesAcrossTheRange() {
+        PitchTracker tracker = new PitchTracker(N);
+        for (float f0 : F0S) {
+            // Ten harmonics falling at 1/h, so the fundamental is not the only strong peak
+            assertTrue(f0 + " Hz voiced", tracker.process(tone(f0, 10, 0.3, 0, 0), N, RATE));
+            assertEquals(f0 + " Hz", f0, tracker.getF0(), 0.25f);
+        }
+    }
+
+    @Test
+    public void noisyHarmonicVoices() {
+        PitchTracker tracker = new PitchTracker(N);
+        for (float f0 : F0S) {
+            // About 13 dB SNR
+            assertTrue(f0 + " Hz voiced", tracker.process(tone(f0, 10, 0.3, 0.03, 7), N, RATE));
+            assertEquals(f0 + " Hz", f0, tracker.getF0(), 0.3f);
+        }
+    }
+
+    @Test
+    public void missingFundamentalStillReportsF0() {
+        // Telephone-style voice: harmonics 2..10 only; the period is still 1/f0
+        PitchTracker tracker = new PitchTracker(N);
+        for (float f0 : new float[]{100f, 150f, 200f}) {
+            short[] pcm = new short[N];
+            for (int i=0;i<N;i++) {
+                double v = 0;
+                for (int h=2;h<=10;h++) v += Math.sin(2 * Math.PI * f0 * h * i / RATE) / h;
+                pcm[i] = (short) Math.round(v * 0.3 * 32767 / 2);
+            }
+            assertTrue(tracker.process(pcm, N, RATE));
+            assertEquals(f0 + " Hz", f0, tracker.getF0(), 0.5f);
+        }
+    }
+
+    @Test
+    public void silenceAndQuietNoiseAreUnvoiced() {
+        PitchTracker tracker = new PitchTracker(N);
+        assertFalse(tracker.process(new short[N], N, RATE));
+        assertEquals(0f, tracker.getF0(), 0f);
+        assertFalse(tracker.process(tone(150, 1, 0, 0.001, 3), N, RATE));
+    }
+
+    @Test
+    public void whiteNoiseHasLowConfidence() {
+        PitchTracker tracker = new PitchTracker(N);
+        tracker.process(tone(150, 1, 0, 0.2, 5), N, RATE);
+        assertTrue("confidence " + tracker.getConfidence(), tracker.getConfidence() < 0.5f);
+    }
+
+    // Harmonics 1..harmonics of f0 at 1/h, peaking near amp of full scale, plus
+    // Gaussian noise of rms noise
+    private static short[] tone(double f0, int harmonics, double amp, double noise, long seed) {
+        Random rnd = new Random(seed);
+        double norm = 0;
+        for (int h=1;h<=harmonics;h++) norm += 1.0 / h;
+        norm = Math.min(norm, 2.0);
+        short[] pcm = new short[N];
+        for (int i=0;i<N;i++) {
+            double v = 0;
+            for (int h=1;h<=harmonics;h++) v += Math.sin(2 * Math.PI * f0 * h * i / RATE + 0.3 * h) / h;
+            v = v / norm * amp + noise * rnd.nextGaussian();
+            pcm[i] = (short) Math.max(-32768, Math.min(32767, Math.round(v * 32767)));
+        }
+        return pcm;
+    }
+}
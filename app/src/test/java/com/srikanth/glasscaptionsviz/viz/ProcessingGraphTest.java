@@ -0,0 +1,67 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * ProcessingGraph's pull-once caching and its rule that a stage belongs to one graph:
+ * the cache is keyed on frame index, so a stage fed by two graphs would mix streams.
+ */
+public class ProcessingGraphTest {
+
+    private static final class Counting extends ProcessingGraph.Stage {
+        int computed;
+        Counting(String name, ProcessingGraph.Stage... inputs) { super(name, inputs); }
+        @Override protected void compute(ProcessingGraph.Frame f) { computed++; }
+    }
+
+    private static final ProcessingGraph.Tap TAP = new ProcessingGraph.Tap() {
+        @Override public void onFrame(ProcessingGraph.Frame f) {}
+    };
+
+    @Test
+    public void sharedInputIsComputedOncePerFrame() {
+        Counting shared = new Counting("shared");
+        ProcessingGraph g = new ProcessingGraph();
+        g.attach(new Counting("a", shared), TAP);
+        g.attach(new Counting("b", shared), TAP);
+        ProcessingGraph.Frame f = new ProcessingGraph.Frame();
+        for (int i=0;i<3;i++) {
+            f.index++;
+            g.process(f);
+        }
+        assertEquals(3, shared.computed);
+    }
+
+    @Test
+    public void stageCannotJoinASecondGraph() {
+        Counting shared = new Counting("shared");
+        ProcessingGraph first = new ProcessingGraph();
+        ProcessingGraph second = new ProcessingGraph();
+        first.attach(shared, TAP);
+        first.attach(shared, TAP); // same graph again is fine
+        try {
+            second.attach(shared, TAP);
+            fail("attached to two graphs");
+        } catch (IllegalStateException expected) {}
+        try {
+            second.attach(new Counting("reader", shared), TAP); // reaching it through an input
+            fail("attached to two graphs through an input");
+        } catch (IllegalStateException expected) {}
+    }
+
+    @Test
+    public void engineBandsAndHopStagesStayApart() {
+        AudioEngine engine = new AudioEngine(null, 16000, false);
+        try {
+            engine.getBlockGraph().attach(engine.getLevelStage(), TAP);
+            fail("hop stage attached to the block graph");
+        } catch (IllegalStateException expected) {}
+        try {
+            engine.getGraph().attach(engine.getBandStage(), TAP);
+            fail("band stage attached to the hop graph");
+        } catch (IllegalStateException expected) {}
+    }
+}
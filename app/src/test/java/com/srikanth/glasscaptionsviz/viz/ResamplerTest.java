@@ -0,0 +1,54 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Resampler's response at the engine's usual conversion, 44.1 kHz capture to 16 kHz:
+ * a sine's level after resampling, fitted at the frequency it lands on at the output.
+ * Anything above 8 kHz aliases into the spectrogram, so it must be in the stopband.
+ */
+public class ResamplerTest {
+    private static final int IN = 44100;
+    private static final int OUT = 16000;
+
+    @Test
+    public void speechBandPassesFlat() {
+        for (double hz : new double[]{100, 500, 1000, 2000, 4000, 6000}) {
+            double db = gainDb(hz);
+            assertTrue(hz + " Hz: " + db + " dB", Math.abs(db) < 0.5);
+        }
+    }
+
+    @Test
+    public void everythingAboveOutputNyquistIsInTheStopband() {
+        for (double hz : new double[]{8200, 8500, 9000, 10000, 12000, 16000, 20000}) {
+            double db = gainDb(hz);
+            assertTrue(hz + " Hz: " + db + " dB", db < -55);
+        }
+    }
+
+    // Output level of a full-scale-ish sine at hz, in dB relative to its input level
+    private static double gainDb(double hz) {
+        Resampler r = new Resampler(IN, OUT);
+        int n = IN;
+        short[] in = new short[n];
+        double amp = 16000;
+        for (int i=0;i<n;i++) in[i] = (short) Math.round(amp * Math.sin(2 * Math.PI * hz * i / IN));
+        short[] out = new short[r.maxOutput(n)];
+        int k = r.process(in, n, out);
+        // A pure tone lands at hz or, above Nyquist, at its alias; fit both quadratures there
+        double f = hz % OUT;
+        if (f > OUT / 2.0) f = OUT - f;
+        double c = 0, s = 0;
+        int from = k / 4; // past the filter's start-up
+        for (int i=from;i<k;i++) {
+            double w = 2 * Math.PI * f * i / OUT;
+            c += out[i] * Math.cos(w);
+            s += out[i] * Math.sin(w);
+        }
+        double level = 2 * Math.sqrt(c * c + s * s) / (k - from);
+        return 20 * Math.log10(Math.max(level, 1e-3) / amp);
+    }
+}
@@ -0,0 +1,166 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SpectrogramRenderer's composed frame against the direct mapping it replaced: every
+ * bin coloured by dbColor (vibrantPalette above the gate), pitch-tinted columns mixed
+ * with pitchPalette, the loudness meter and the waveform stroke drawn over the top.
+ * The sink stores what an RGB_565 bitmap would hold, so the check covers the whole
+ * path to the screen. Per channel, the output may differ from the reference by the
+ * palette's index rounding (PALETTE_TOLERANCE), the tint's hue steps
+ * (TINT_TOLERANCE, tinted columns only) and RGB_565 truncation (7 for red and blue,
+ * 3 for green).
+ */
+public class SpectrogramRendererTest {
+    private static final int BINS = 512;
+    private static final int PALETTE_TOLERANCE = 2;
+    private static final int TINT_TOLERANCE = 3;
+    private static final int[] RGB565_TOLERANCE = {7, 3, 7};
+    private static final int UNWRITTEN = 0x00123456; // alpha 0: no sink call covered the pixel
+
+    // RGB_565 sink over a full frame
+    private static final class Frame565 implements SpectrogramRenderer.PixelSink {
+        final int width, height;
+        final int[] px;
+        Frame565(int width, int height) {
+            this.width = width;
+            this.height = height;
+            px = new int[width * height];
+            java.util.Arrays.fill(px, UNWRITTEN);
+        }
+        @Override public void setPixels(int[] pixels, int offset, int stride, int x, int y, int w, int h) {
+            assertTrue("rect inside the frame", x >= 0 && y >= 0 && x + w <= width && y + h <= height);
+            for (int j=0;j<h;j++) {
+                for (int i=0;i<w;i++) px[(y + j) * width + x + i] = to565(pixels[offset + j * stride + i]);
+            }
+        }
+    }
+
+    @Test
+    public void unscaledFrameMatchesTheDirectMapping() {
+        // 320x200: one source column per output x, one source row per output y
+        check(320, 200);
+    }
+
+    @Test
+    public void scaledFrameMatchesTheDirectMapping() {
+        // 1280x720: 1024 columns and 512 rows stretched over the area
+        check(1280, 720);
+    }
+
+    private static void check(int width, int height) {
+        SpectrogramRenderer r = new SpectrogramRenderer();
+        r.resize(width, height);
+        r.setAdaptiveLevels(false); // the fixed dB mapping is the reference
+        int cols = r.getColumns(), rows = r.getRows();
+        int sw = r.getMeterX() - 5;
+
+        // One full pass of the ring, so source column c holds column c
+        float[][] db = new float[cols][BINS];
+        float[] pitch = new float[cols];
+        float[] mags = new float[BINS];
+        for (int c=0;c<cols;c++) {
+            pitch[c] = c % 4 == 1 ? 90f + (c % 50) * 6f : 0f;
+            r.setPitch(pitch[c], 1f);
+            for (int b=0;b<BINS;b++) {
+                float level = -70f + 75f * ((b * 3 + c * 7) % 101) / 100f;
+                mags[b] = (float) Math.pow(10, level / 20);
+                db[c][b] = 20f * (float) Math.log10(Math.max(mags[b], 1e-12f)); // as writeColumn has it
+            }
+            r.writeColumn(mags);
+        }
+        r.setLoudness(0.1f, 0);  // -20 dBFS: two thirds up the meter
+        float[] wave = new float[cols];
+        for (int i=0;i<cols;i++) wave[i] = (float) (0.8 * Math.sin(2 * Math.PI * 3 * i / cols));
+        r.setWaveform(wave);
+
+        Frame565 frame = new Frame565(width, height);
+        assertTrue(r.compose(frame));
+
+        int[] top = new int[sw], bottom = new int[sw];
+        waveSpans(wave, sw, height, top, bottom);
+        for (int y=0;y<height;y++) {
+            for (int x=0;x<width;x++) {
+                int got = frame.px[y * width + x];
+                String at = width + "x" + height + " (" + x + "," + y + ")";
+                if (x < sw) {
+                    int c = (int) ((long) x * cols / sw);
+                    int bin = rows - 1 - (int) ((long) y * rows / height);
+                    if (y >= top[x] && y <= bottom[x]) {
+                        assertClose(at + " waveform", 0xFF222222, got, 0);
+                        continue;
+                    }
+                    int want = SpectrogramRenderer.dbColor(db[c][bin]);
+                    int extra = 0;
+                    if (want != SpectrogramRenderer.BACKGROUND && pitch[c] > 0f) {
+                        float p = (float) (Math.log(pitch[c] / 80f) / Math.log(400f / 80f));
+                        want = SpectrogramRenderer.interpolateColor(want,
+                                SpectrogramRenderer.pitchPalette(Math.max(0f, Math.min(1f, p))), 0.45f);
+                        extra = TINT_TOLERANCE;
+                    }
+                    assertClose(at + " bin " + bin + " at " + db[c][bin] + " dB", want, got,
+                            want == SpectrogramRenderer.BACKGROUND ? 0 : PALETTE_TOLERANCE + extra);
+                } else if (x >= r.getMeterX() && x < r.getMeterX() + r.getMeterWidth()) {
+                    assertClose(at + " meter", meterColor(r, x, y, height), got, 0);
+                } else {
+                    assertEquals(at + " gap beside the meter is left alone", UNWRITTEN, got);
+                }
+            }
+        }
+    }
+
+    // The meter as drawn directly: a framed bar, level from the bottom, peak line
+    private static int meterColor(SpectrogramRenderer r, int x, int y, int height) {
+        int x0 = r.getMeterX(), x1 = Math.min(r.getWidth(), x0 + r.getMeterWidth());
+        int meterY = 20, meterH = height - 40;
+        if (y < meterY || y >= meterY + meterH) return SpectrogramRenderer.BACKGROUND;
+        float level = r.getCurrentLoudness();
+        int levelTop = Math.round(meterY + meterH - level * meterH);
+        boolean inner = x > x0 && x < x1 - 1;
+        if (inner && Math.abs(y - levelTop) <= 1) return 0xFFFF0000; // peak equals level here
+        if (inner && y >= levelTop && y < meterY + meterH - 1) {
+            return level < 0.5f ? SpectrogramRenderer.interpolateColor(0xFF00FF00, 0xFFFFFF00, level * 2f)
+                    : SpectrogramRenderer.interpolateColor(0xFFFFFF00, 0xFFFF0000, (level - 0.5f) * 2f);
+        }
+        return 0xFF222222;
+    }
+
+    // The 2 px polyline through the samples, as vertical spans per output x
+    private static void waveSpans(float[] wave, int sw, int height, int[] top, int[] bottom) {
+        java.util.Arrays.fill(top, Integer.MAX_VALUE);
+        java.util.Arrays.fill(bottom, Integer.MIN_VALUE);
+        int len = wave.length, centerY = height / 2, amp = height / 4;
+        for (int i=1;i<len && i<sw;i++) {
+            int xa = (i - 1) * sw / len, xb = Math.min(sw - 1, i * sw / len);
+            float y1 = centerY + wave[i - 1] * amp, y2 = centerY + wave[i] * amp;
+            for (int x=xa;x<=xb;x++) {
+                top[x] = Math.min(top[x], Math.round(Math.min(y1, y2)) - 1);
+                bottom[x] = Math.max(bottom[x], Math.round(Math.max(y1, y2)) + 1);
+            }
+        }
+    }
+
+    // want is ARGB_8888; got has already been through RGB_565
+    private static void assertClose(String what, int want, int got, int tolerance) {
+        int[] shifts = {16, 8, 0};
+        for (int ch=0;ch<3;ch++) {
+            int w = (want >> shifts[ch]) & 0xFF, g = (got >> shifts[ch]) & 0xFF;
+            int allowed = tolerance + RGB565_TOLERANCE[ch];
+            if (Math.abs(w - g) > allowed) {
+                throw new AssertionError(what + ": want " + Integer.toHexString(want) + " got "
+                        + Integer.toHexString(got) + " (channel " + ch + " off by " + Math.abs(w - g)
+                        + ", allowed " + allowed + ")");
+            }
+        }
+    }
+
+    // What an RGB_565 bitmap keeps of an ARGB colour, expanded back to 8 bits a channel
+    private static int to565(int argb) {
+        int r5 = (argb >> 19) & 0x1F, g6 = (argb >> 10) & 0x3F, b5 = (argb >> 3) & 0x1F;
+        return 0xFF000000 | ((r5 << 3 | r5 >> 2) << 16) | ((g6 << 2 | g6 >> 4) << 8) | (b5 << 3 | b5 >> 2);
+    }
+}
@@ -0,0 +1,176 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The DSP thread and the renderer must not allocate once warmed up: garbage on the
+ * audio path means GC pauses on Glass. Synthetic capture runs through the same ring,
+ * resampler and {@link AudioEngine#processChunk} path as the live DSP thread, with
+ * every listener type attached, and each graph stage and tap is checked on its own.
+ */
+public class SteadyStateAllocationTest {
+    private static final long BUDGET_BYTES_PER_FRAME = 0;
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int MEASURE_FRAMES = 5000;
+    private static final int WINDOWS = 3;
+    private static final int CAPTURE_RATE = 44100;
+
+    @Test
+    public void floatFftPath() {
+        assertDspPathWithinBudget(new AudioEngine(null, 16000, false), false);
+    }
+
+    @Test
+    public void fixedPointFftPath() {
+        assertDspPathWithinBudget(new AudioEngine(null, 16000, true), false);
+    }
+
+    @Test
+    public void multiResolutionPath() {
+        assertDspPathWithinBudget(new AudioEngine(null, 16000, false), true);
+    }
+
+    @Test
+    public void rendererWriteAndCompose() {
+        SpectrogramRenderer r = new SpectrogramRenderer();
+        r.resize(640, 360);
+        r.setHistory(new SpectrogramHistory(SpectrogramHistory.DEFAULT_COLUMNS, SpectrogramHistory.DEFAULT_BINS));
+        SpectrogramRenderer.PixelSink sink = new SpectrogramRenderer.PixelSink() {
+            @Override public void setPixels(int[] pixels, int offset, int stride, int x, int y, int w, int h) {}
+        };
+        float[] mags = new float[512];
+        float[] waveform = new float[1024];
+        for (int i=0;i<waveform.length;i++) waveform[i] = (float) Math.sin(i * 0.05) * 0.5f;
+
+        // Windows retried as for the DSP path below; the total is compared, not a
+        // per-column average, so even one stray allocation in a window fails it
+        ThreadAllocations counter = new ThreadAllocations();
+        int c = draw(r, sink, mags, waveform, 0, WARMUP_FRAMES);
+        long total = 0;
+        for (int w=0;w<WINDOWS;w++) {
+            long start = counter.threadAllocatedBytes();
+            c = draw(r, sink, mags, waveform, c, MEASURE_FRAMES);
+            total = counter.threadAllocatedBytes() - start;
+            if (total <= BUDGET_BYTES_PER_FRAME * MEASURE_FRAMES) break;
+        }
+        assertTrue("renderer allocated " + total + " B over " + MEASURE_FRAMES + " columns",
+                total <= BUDGET_BYTES_PER_FRAME * MEASURE_FRAMES);
+    }
+
+    // Writes and composes n columns from column c on; returns the next column
+    private static int draw(SpectrogramRenderer r, SpectrogramRenderer.PixelSink sink, float[] mags,
+                            float[] waveform, int c, int n) {
+        for (int end = c + n; c < end; c++) {
+            // A repeating pattern, so every tint palette it needs is cached during warm-up
+            for (int i=0;i<mags.length;i++) mags[i] = (float) Math.pow(10, -3 + 2.5 * (((i * 7 + c) % 64) / 64.0));
+            r.setPitch(c % 3 == 0 ? 0f : 100f + 20 * (c % 8), 0.6f + 0.1f * (c % 4));
+            r.setLoudness((c % 50) / 100f, c * 32L);
+            r.writeColumn(mags);
+            if (c % 200 == 0) r.setWaveform(waveform);
+            if (c % 200 == 100) r.clearWaveform();
+            if (c % 500 == 250) r.showHistory(100, 1 << (c / 500 % 4));
+            if (c % 500 == 400) r.showLive();
+            r.compose(sink);
+        }
+        return c;
+    }
+
+    private static void assertDspPathWithinBudget(AudioEngine engine, boolean multiResolution) {
+        engine.setMultiResolution(multiResolution);
+        final SpectrogramRenderer renderer = new SpectrogramRenderer();
+        renderer.resize(640, 360);
+        engine.addSpectrogramSink(new AudioEngine.SpectrogramSink() {
+            @Override public void onSpectrogramColumn(float[] mags) { renderer.writeColumn(mags); }
+        });
+        engine.addLoudnessListener(new AudioEngine.LoudnessListener() {
+            @Override public void onLoudnessUpdate(float loudness) { renderer.setLoudness(loudness, 0); }
+        });
+        engine.addPitchListener(new AudioEngine.PitchListener() {
+            @Override public void onPitch(long t, float f0, float confidence) { renderer.setPitch(f0, confidence); }
+        });
+        engine.addBandLevelListener(new AudioEngine.BandLevelListener() {
+            @Override public void onBandLevels(long t, float[] levels) {}
+        });
+        engine.addStressListener(new AudioEngine.StressListener() {
+            @Override public void onStress(long t, float strength) {}
+        });
+        engine.startWaveformRecording();
+
+        int dspRate = AudioEngine.DEFAULT_DSP_RATE;
+        engine.startFrames(dspRate, dspRate * 32 / 1000);
+        PcmRing ring = new PcmRing(CAPTURE_RATE);
+        Resampler resampler = new Resampler(CAPTURE_RATE, dspRate);
+        short[] capture = new short[1024];
+        short[] in = new short[256];
+        short[] out = new short[resampler.maxOutput(in.length)];
+        ProcessingGraph graph = engine.getGraph();
+        ProcessingGraph blockGraph = engine.getBlockGraph();
+        final long[] frames = new long[1];
+        graph.attach(null, new ProcessingGraph.Tap() {
+            @Override public void onFrame(ProcessingGraph.Frame f) { frames[0]++; }
+        });
+
+        // Counted from the first frame so the JIT never sees the counter appear mid-run.
+        // HotSpot still charges the thread an odd few hundred bytes now and then (seen
+        // even on a tap whose body was a bare return), so a window may be retried;
+        // anything the code itself allocates per frame, or every few seconds, shows up
+        // in every window.
+        ThreadAllocations counter = new ThreadAllocations();
+        graph.setAllocationCounter(counter);
+        blockGraph.setAllocationCounter(counter);
+        long pos = run(engine, ring, resampler, capture, in, out, frames, 0, WARMUP_FRAMES);
+        String report = null;
+        long total = 0, measured = 0;
+        for (int w=0;w<WINDOWS;w++) {
+            graph.resetAllocationCounts();
+            blockGraph.resetAllocationCounts();
+            long from = frames[0];
+            long start = counter.threadAllocatedBytes();
+            pos = run(engine, ring, resampler, capture, in, out, frames, pos, MEASURE_FRAMES);
+            measured = frames[0] - from;
+            total = counter.threadAllocatedBytes() - start;
+            report = graph.allocationReport(measured, BUDGET_BYTES_PER_FRAME)
+                    + blockGraph.allocationReport(measured, BUDGET_BYTES_PER_FRAME);
+            if (report.isEmpty() && total <= BUDGET_BYTES_PER_FRAME * measured) break;
+        }
+        graph.setAllocationCounter(null);
+        blockGraph.setAllocationCounter(null);
+
+        assertEquals("stages and taps over budget", "", report);
+        assertTrue("DSP path allocated " + total + " B over " + measured + " frames",
+                total <= BUDGET_BYTES_PER_FRAME * measured);
+    }
+
+    // Feeds synthetic capture from pos until at least n more frames have been processed
+    private static long run(AudioEngine engine, PcmRing ring, Resampler resampler, short[] capture,
+                            short[] in, short[] out, long[] frames, long pos, int n) {
+        long until = frames[0] + n;
+        while (frames[0] < until) {
+            for (int i=0;i<capture.length;i++,pos++) capture[i] = syllables(pos);
+            ring.offer(capture, capture.length);
+            while (ring.poll(in, in.length)) {
+                int k = resampler.process(in, in.length, out);
+                engine.processChunk(out, k, (pos - ring.available()) * 1_000_000_000L / CAPTURE_RATE);
+            }
+        }
+        return pos;
+    }
+
+    // Voiced bursts with a gliding pitch, noise between them and exact silence now and
+    // then (exercises the zero-buffer diagnostics); repeats every 4 s
+    private static short syllables(long pos) {
+        long t = pos % (4L * CAPTURE_RATE);
+        if (t < CAPTURE_RATE / 4) return 0;
+        double sec = t / (double) CAPTURE_RATE;
+        boolean voiced = (t / (CAPTURE_RATE / 5)) % 2 == 0;
+        double noise = ((pos * 1103515245L + 12345L) >>> 16 & 0xFFF) - 2048;
+        if (!voiced) return (short) (noise * 0.1);
+        double f0 = 120 + 40 * Math.sin(2 * Math.PI * 0.5 * sec);
+        double v = 0;
+        for (int h=1;h<=6;h++) v += Math.sin(2 * Math.PI * f0 * h * sec) / h;
+        return (short) (6000 * v + noise * 0.05);
+    }
+}
@@ -0,0 +1,40 @@
+package com.srikanth.glasscaptionsviz.viz;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated so far by the thread that created it, from HotSpot's per-thread
+ * counter. The build runs on JDK 8, which has no getCurrentThreadAllocatedBytes();
+ * getThreadAllocatedBytes(id) there allocates two small arrays per call, so that
+ * fixed cost is measured once and subtracted per call. On newer JDKs it measures 0.
+ */
+final class ThreadAllocations implements ProcessingGraph.AllocationCounter {
+    private static final com.sun.management.ThreadMXBean MX =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final long threadId = Thread.currentThread().getId();
+    private final long perCall;
+    private long calls = 0;
+
+    ThreadAllocations() {
+        MX.setThreadAllocatedMemoryEnabled(true);
+        long min = Long.MAX_VALUE;
+        for (int i=0;i<20000;i++) {
+            long a = raw();
+            long b = raw();
+            min = Math.min(min, b - a); // b's own lookup is all that happened in between
+        }
+        perCall = min;
+    }
+
+    private long raw() {
+        return MX.getThreadAllocatedBytes(threadId);
+    }
+
+    @Override
+    public long threadAllocatedBytes() {
+        if (Thread.currentThread().getId() != threadId) throw new IllegalStateException("wrong thread");
+        calls++;
+        return raw() - calls * perCall;
+    }
+}